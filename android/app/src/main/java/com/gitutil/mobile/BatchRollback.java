@@ -0,0 +1,395 @@
+package com.gitutil.mobile;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.PushCommand;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.transport.PushResult;
+import org.eclipse.jgit.transport.RefSpec;
+import org.eclipse.jgit.transport.RemoteRefUpdate;
+import org.eclipse.jgit.transport.UsernamePasswordCredentialsProvider;
+
+import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * All-or-nothing rollback of several repositories
+ *
+ * Runs the apply-rollback steps for every (repository, commit) pair as one
+ * transaction: validation and backup branches are created in parallel, resets
+ * run concurrently, and force pushes only start once every local step
+ * succeeded. If any step fails, every repository that was already changed is
+ * restored from its backup/before-rollback-* branch, and remotes that were
+ * already pushed are force-pushed back to their original head.
+ */
+final class BatchRollback {
+    private static final String TAG = "BatchRollback";
+
+    // Repositories processed at the same time; pushes are network bound, resets disk bound
+    private static final int MAX_PARALLEL = 4;
+
+    private static final ExecutorService POOL = Executors.newFixedThreadPool(MAX_PARALLEL, runnable -> {
+        Thread thread = new Thread(runnable, "batch-rollback");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * One repository and the commit it should be rolled back to
+     */
+    static final class Target {
+        final String path;
+        final String commit;
+        final String token;
+
+        Target(String path, String commit, String token) {
+            this.path = path;
+            this.commit = commit;
+            this.token = token;
+        }
+    }
+
+    /**
+     * Step output and the overall result
+     */
+    static final class Outcome {
+        final boolean success;
+        final String output;
+        final String error;
+
+        Outcome(boolean success, String output, String error) {
+            this.success = success;
+            this.output = output;
+            this.error = error;
+        }
+    }
+
+    private interface Step {
+        void run(Entry entry) throws Exception;
+    }
+
+    /**
+     * Per-repository transaction state
+     */
+    private static final class Entry {
+        final Target target;
+        final StringBuilder details = new StringBuilder();
+        Repository repository;
+        Git git;
+        ObjectId commitId;
+        ObjectId originalHead;
+        String branch;
+        String backupBranchName;
+        boolean hasOrigin;
+        boolean reset;
+        boolean pushed;
+        boolean restored;
+        String error;
+
+        Entry(Target target) {
+            this.target = target;
+        }
+
+        String name() {
+            return new File(target.path).getName();
+        }
+
+        void detail(String message) {
+            synchronized (details) {
+                details.append("STEP_DETAIL:").append(name()).append(": ").append(message).append("\n");
+            }
+        }
+    }
+
+    private final TimelinePager.RepositoryOpener opener;
+
+    BatchRollback(TimelinePager.RepositoryOpener opener) {
+        this.opener = opener;
+    }
+
+    /**
+     * Roll back all targets, or none of them
+     */
+    Outcome run(List<Target> targets) {
+        StringBuilder stepOutput = new StringBuilder();
+        List<Entry> entries = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        for (Target target : targets) {
+            if (!seen.add(new File(target.path).getAbsolutePath())) {
+                return new Outcome(false, stepOutput.toString(), "BATCH_ROLLBACK_FAILED\nRepository listed twice: " + target.path);
+            }
+            entries.add(new Entry(target));
+        }
+        if (entries.isEmpty()) {
+            return new Outcome(false, stepOutput.toString(), "BATCH_ROLLBACK_FAILED\nNo repositories given");
+        }
+
+        EventLog.i(TAG, "Batch rollback of {} repositories started", entries.size());
+        // One timestamp for the whole batch so the backup branches can be matched up
+        String timestamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.US).format(new Date());
+        try {
+            // Step 1: Validate every repository
+            stepOutput.append("STEP_STATUS:validate:in_progress\n");
+            boolean ok = runAll(entries, this::validate);
+            collect(entries, stepOutput);
+            if (!ok) {
+                stepOutput.append("STEP_STATUS:validate:failed\n");
+                return failure(entries, stepOutput, "Validation failed");
+            }
+            stepOutput.append("STEP_STATUS:validate:completed\n");
+
+            // Step 2: Create backup branches
+            stepOutput.append("STEP_STATUS:backup:in_progress\n");
+            ok = runAll(entries, entry -> createBackup(entry, timestamp));
+            collect(entries, stepOutput);
+            if (!ok) {
+                stepOutput.append("STEP_STATUS:backup:failed\n");
+                deleteBackups(entries, stepOutput);
+                return failure(entries, stepOutput, "Failed to create backup branches");
+            }
+            stepOutput.append("STEP_STATUS:backup:completed\n");
+
+            // Step 3: Reset every working tree
+            stepOutput.append("STEP_STATUS:reset:in_progress\n");
+            ok = runAll(entries, this::reset);
+            collect(entries, stepOutput);
+            if (!ok) {
+                stepOutput.append("STEP_STATUS:reset:failed\n");
+                restoreAll(entries, stepOutput);
+                return failure(entries, stepOutput, "Reset failed - all repositories restored");
+            }
+            stepOutput.append("STEP_STATUS:reset:completed\n");
+
+            // Step 4: Push, only now that every local step succeeded
+            stepOutput.append("STEP_STATUS:push:in_progress\n");
+            ok = runAll(entries, this::push);
+            collect(entries, stepOutput);
+            if (!ok) {
+                stepOutput.append("STEP_STATUS:push:failed\n");
+                restoreAll(entries, stepOutput);
+                return failure(entries, stepOutput, "Push to remote failed - all repositories restored");
+            }
+            stepOutput.append("STEP_STATUS:push:completed\n");
+
+            for (Entry entry : entries) {
+                stepOutput.append("BATCH_REPO:").append(entry.target.path).append(":rolled_back:")
+                    .append(entry.backupBranchName).append("\n");
+            }
+            EventLog.i(TAG, "Batch rollback of {} repositories completed", entries.size());
+            return new Outcome(true, stepOutput.toString() + "BATCH_ROLLBACK_SUCCESS: " + entries.size(), "");
+        } finally {
+            for (Entry entry : entries) {
+                if (entry.git != null) {
+                    entry.git.close();
+                }
+                if (entry.repository != null) {
+                    entry.repository.close();
+                }
+            }
+        }
+    }
+
+    private void validate(Entry entry) throws Exception {
+        entry.repository = opener.open(entry.target.path);
+        entry.git = new Git(entry.repository);
+        if (!entry.repository.getObjectDatabase().exists()) {
+            throw new IllegalStateException("Invalid repository");
+        }
+        entry.commitId = entry.repository.resolve(entry.target.commit);
+        if (entry.commitId == null) {
+            throw new IllegalStateException("Commit not found: " + entry.target.commit);
+        }
+        entry.originalHead = entry.repository.resolve(Constants.HEAD);
+        if (entry.originalHead == null) {
+            throw new IllegalStateException("Could not determine current HEAD");
+        }
+        if (!GitBridge.isReachableFromHead(entry.repository, entry.commitId)) {
+            throw new IllegalStateException("Commit is not in the history of the current branch: " + entry.target.commit);
+        }
+        entry.hasOrigin = entry.git.remoteList().call().stream().anyMatch(remote -> remote.getName().equals("origin"));
+        String fullBranch = entry.repository.getFullBranch();
+        if (entry.hasOrigin && (fullBranch == null || !fullBranch.startsWith(Constants.R_HEADS))) {
+            // A detached HEAD has no branch to push, so the remote could not be rolled back
+            throw new IllegalStateException("HEAD is detached");
+        }
+        entry.branch = entry.repository.getBranch();
+        entry.detail("Commit verified: " + abbreviate(entry.target.commit));
+    }
+
+    private void createBackup(Entry entry, String timestamp) throws Exception {
+        String name = "backup/before-rollback-" + timestamp;
+        entry.git.branchCreate()
+            .setName(name)
+            .setStartPoint(entry.originalHead.getName())
+            .call();
+        entry.backupBranchName = name;
+        entry.detail("Backup branch created: " + name);
+
+        if (entry.hasOrigin) {
+            try {
+                push(entry, new RefSpec(name + ":" + name), false);
+                entry.detail("Backup branch pushed to remote");
+            } catch (Exception pushEx) {
+                // Don't fail the batch if a backup push fails, same as apply-rollback
+                EventLog.w(TAG, "{}: failed to push backup branch: {}", entry.name(), pushEx);
+                entry.detail("Warning: Failed to push backup branch to remote (kept locally only)");
+            }
+        }
+    }
+
+    private void reset(Entry entry) throws Exception {
+        // Marked before the reset, so a half-written working tree is restored too
+        entry.reset = true;
+        ParallelCheckout.hardReset(entry.git, entry.commitId.getName());
+        entry.detail("Reset to " + abbreviate(entry.target.commit));
+    }
+
+    private void push(Entry entry) throws Exception {
+        if (!entry.hasOrigin) {
+            entry.detail("No remote configured - push skipped");
+            return;
+        }
+        push(entry, new RefSpec(entry.branch + ":" + entry.branch), true);
+        entry.pushed = true;
+        entry.detail("Pushed to remote branch " + entry.branch);
+    }
+
+    private static void push(Entry entry, RefSpec refSpec, boolean force) throws Exception {
+        PushCommand pushCommand = entry.git.push()
+            .setRemote("origin")
+            .setRefSpecs(refSpec)
+            .setForce(force);
+        String token = entry.target.token;
+        if (token != null && !token.trim().isEmpty()) {
+            pushCommand.setCredentialsProvider(new UsernamePasswordCredentialsProvider("x-access-token", token));
+        }
+        // Rejected updates are reported in the result, not thrown
+        for (PushResult result : pushCommand.call()) {
+            for (RemoteRefUpdate update : result.getRemoteUpdates()) {
+                RemoteRefUpdate.Status status = update.getStatus();
+                if (status != RemoteRefUpdate.Status.OK && status != RemoteRefUpdate.Status.UP_TO_DATE) {
+                    throw new IllegalStateException("Push of " + update.getRemoteName() + " rejected: " + status
+                        + (update.getMessage() != null ? " (" + update.getMessage() + ")" : ""));
+                }
+            }
+        }
+    }
+
+    /**
+     * Run a step for every entry in parallel; failures are recorded on the entry
+     * @return true if the step succeeded for every entry
+     */
+    private static boolean runAll(List<Entry> entries, Step step) {
+        List<Future<?>> futures = new ArrayList<>();
+        for (Entry entry : entries) {
+            futures.add(POOL.submit(() -> {
+                try {
+                    step.run(entry);
+                } catch (Exception e) {
+                    entry.error = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+                    entry.detail("Failed: " + entry.error);
+                    EventLog.e(TAG, "{}: {}", entry.name(), e);
+                }
+            }));
+        }
+        boolean ok = true;
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                futures.get(i).get();
+            } catch (Exception e) {
+                entries.get(i).error = e.getMessage();
+            }
+            if (entries.get(i).error != null) {
+                ok = false;
+            }
+        }
+        return ok;
+    }
+
+    /**
+     * Move per-repository details into the step output in request order
+     */
+    private static void collect(List<Entry> entries, StringBuilder stepOutput) {
+        for (Entry entry : entries) {
+            synchronized (entry.details) {
+                stepOutput.append(entry.details);
+                entry.details.setLength(0);
+            }
+        }
+    }
+
+    /**
+     * Remove backup branches after a failed backup step; nothing else was changed yet
+     */
+    private static void deleteBackups(List<Entry> entries, StringBuilder stepOutput) {
+        for (Entry entry : entries) {
+            if (entry.backupBranchName == null) {
+                continue;
+            }
+            try {
+                entry.git.branchDelete().setBranchNames(entry.backupBranchName).setForce(true).call();
+                entry.backupBranchName = null;
+            } catch (Exception e) {
+                entry.detail("Warning: Could not delete backup branch " + entry.backupBranchName);
+            }
+        }
+        collect(entries, stepOutput);
+    }
+
+    /**
+     * Restore every changed repository from its backup branch, and force-push
+     * the original head to remotes that already received the rollback
+     */
+    private static void restoreAll(List<Entry> entries, StringBuilder stepOutput) {
+        stepOutput.append("STEP_DETAIL:Transaction failed - restoring all repositories\n");
+        EventLog.w(TAG, "Batch transaction failed - restoring all repositories from backup");
+        runAll(entries, entry -> {
+            if (!entry.reset) {
+                return;
+            }
+            ParallelCheckout.hardReset(entry.git, entry.backupBranchName);
+            entry.reset = false;
+            entry.detail("Restored from backup branch " + entry.backupBranchName);
+            if (entry.pushed) {
+                push(entry, new RefSpec(entry.branch + ":" + entry.branch), true);
+                entry.pushed = false;
+                entry.detail("Remote branch restored to " + entry.originalHead.getName().substring(0, 8));
+            }
+            entry.restored = true;
+            // Same as apply-rollback: the backup is no longer needed once the original state is back
+            entry.git.branchDelete().setBranchNames(entry.backupBranchName).setForce(true).call();
+            entry.backupBranchName = null;
+        });
+        collect(entries, stepOutput);
+    }
+
+    private static Outcome failure(List<Entry> entries, StringBuilder stepOutput, String reason) {
+        StringBuilder error = new StringBuilder("BATCH_ROLLBACK_FAILED\n").append(reason);
+        for (Entry entry : entries) {
+            String state = entry.reset || entry.pushed ? "not_restored" : entry.restored ? "restored" : "unchanged";
+            stepOutput.append("BATCH_REPO:").append(entry.target.path).append(":").append(state);
+            if (entry.backupBranchName != null) {
+                stepOutput.append(":").append(entry.backupBranchName);
+            }
+            stepOutput.append("\n");
+            if (entry.error != null) {
+                error.append("\n").append(entry.name()).append(": ").append(entry.error);
+            }
+        }
+        return new Outcome(false, stepOutput.toString(), error.toString());
+    }
+
+    private static String abbreviate(String commit) {
+        return commit.substring(0, Math.min(commit.length(), 8));
+    }
+}
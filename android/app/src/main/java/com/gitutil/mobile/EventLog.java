@@ -0,0 +1,444 @@
+package com.gitutil.mobile;
+
+import android.content.Context;
+import android.util.Log;
+
+import org.eclipse.jgit.lib.AnyObjectId;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Asynchronous structured event log
+ *
+ * Logging calls only check the level and copy the template, up to three
+ * arguments and a timestamp into a preallocated ring buffer slot; no string
+ * is built on the calling thread. A background thread formats the events
+ * ({} placeholders, slf4j style), appends them to a rotating file and mirrors
+ * them to logcat. When the buffer is full the oldest events are overwritten
+ * and counted as dropped. Arguments are formatted later, so they must not be
+ * mutated after the call (strings, ObjectIds and exceptions are fine).
+ */
+final class EventLog {
+    private static final String TAG = "EventLog";
+
+    static final int DEBUG = 0;
+    static final int INFO = 1;
+    static final int WARN = 2;
+    static final int ERROR = 3;
+
+    private static final String[] LEVEL_NAMES = {"DEBUG", "INFO", "WARN", "ERROR"};
+
+    // Power of two so the slot index is a mask of the sequence number
+    private static final int CAPACITY = 4096;
+    private static final int MASK = CAPACITY - 1;
+
+    // The file is rotated to events.log.1 when it grows beyond this
+    private static final long MAX_FILE_BYTES = 1024 * 1024;
+    private static final long DRAIN_INTERVAL_MS = 500;
+
+    // dump-logs returns at most this much of the log file
+    static final int MAX_DUMP_BYTES = 256 * 1024;
+
+    private static volatile int minLevel = INFO;
+
+    /**
+     * One preallocated event; fields are overwritten in place
+     */
+    private static final class Slot {
+        long time;
+        int level;
+        String tag;
+        String thread;
+        String template;
+        int argCount;
+        Object arg0;
+        Object arg1;
+        Object arg2;
+
+        void copyFrom(Slot other) {
+            time = other.time;
+            level = other.level;
+            tag = other.tag;
+            thread = other.thread;
+            template = other.template;
+            argCount = other.argCount;
+            arg0 = other.arg0;
+            arg1 = other.arg1;
+            arg2 = other.arg2;
+        }
+
+        Object arg(int index) {
+            return index == 0 ? arg0 : index == 1 ? arg1 : arg2;
+        }
+    }
+
+    private static final Slot[] RING = new Slot[CAPACITY];
+    // Drain batch; only used by the thread holding DRAIN_LOCK
+    private static final Slot[] BATCH = new Slot[CAPACITY];
+    private static final Object DRAIN_LOCK = new Object();
+    private static long writeSequence;
+    private static long readSequence;
+    private static long dropped;
+    private static File logFile;
+    private static Thread writer;
+
+    static {
+        for (int i = 0; i < CAPACITY; i++) {
+            RING[i] = new Slot();
+            BATCH[i] = new Slot();
+        }
+    }
+
+    private EventLog() {
+    }
+
+    /**
+     * Start writing events to {@code <files>/logs/events.log}; safe to call more than once
+     */
+    static synchronized void init(Context context) {
+        if (writer != null) {
+            return;
+        }
+        File directory = new File(context.getFilesDir(), "logs");
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            Log.w(TAG, "Could not create log directory " + directory);
+            return;
+        }
+        logFile = new File(directory, "events.log");
+        writer = new Thread(EventLog::drainLoop, "event-log-writer");
+        writer.setDaemon(true);
+        writer.setPriority(Thread.MIN_PRIORITY);
+        writer.start();
+    }
+
+    static void setLevel(int level) {
+        minLevel = level;
+    }
+
+    static boolean isEnabled(int level) {
+        return level >= minLevel;
+    }
+
+    static void d(String tag, String template) {
+        if (DEBUG >= minLevel) {
+            append(DEBUG, tag, template, 0, null, null, null);
+        }
+    }
+
+    static void d(String tag, String template, Object arg0) {
+        if (DEBUG >= minLevel) {
+            append(DEBUG, tag, template, 1, arg0, null, null);
+        }
+    }
+
+    static void d(String tag, String template, Object arg0, Object arg1) {
+        if (DEBUG >= minLevel) {
+            append(DEBUG, tag, template, 2, arg0, arg1, null);
+        }
+    }
+
+    static void i(String tag, String template) {
+        if (INFO >= minLevel) {
+            append(INFO, tag, template, 0, null, null, null);
+        }
+    }
+
+    static void i(String tag, String template, Object arg0) {
+        if (INFO >= minLevel) {
+            append(INFO, tag, template, 1, arg0, null, null);
+        }
+    }
+
+    static void i(String tag, String template, Object arg0, Object arg1) {
+        if (INFO >= minLevel) {
+            append(INFO, tag, template, 2, arg0, arg1, null);
+        }
+    }
+
+    static void i(String tag, String template, Object arg0, Object arg1, Object arg2) {
+        if (INFO >= minLevel) {
+            append(INFO, tag, template, 3, arg0, arg1, arg2);
+        }
+    }
+
+    static void w(String tag, String template) {
+        if (WARN >= minLevel) {
+            append(WARN, tag, template, 0, null, null, null);
+        }
+    }
+
+    static void w(String tag, String template, Object arg0) {
+        if (WARN >= minLevel) {
+            append(WARN, tag, template, 1, arg0, null, null);
+        }
+    }
+
+    static void w(String tag, String template, Object arg0, Object arg1) {
+        if (WARN >= minLevel) {
+            append(WARN, tag, template, 2, arg0, arg1, null);
+        }
+    }
+
+    static void e(String tag, String template) {
+        append(ERROR, tag, template, 0, null, null, null);
+    }
+
+    static void e(String tag, String template, Object arg0) {
+        append(ERROR, tag, template, 1, arg0, null, null);
+    }
+
+    static void e(String tag, String template, Object arg0, Object arg1) {
+        append(ERROR, tag, template, 2, arg0, arg1, null);
+    }
+
+    private static void append(int level, String tag, String template, int argCount,
+                               Object arg0, Object arg1, Object arg2) {
+        long now = System.currentTimeMillis();
+        String thread = Thread.currentThread().getName();
+        synchronized (RING) {
+            Slot slot = RING[(int) (writeSequence & MASK)];
+            slot.time = now;
+            slot.level = level;
+            slot.tag = tag;
+            slot.thread = thread;
+            slot.template = template;
+            slot.argCount = argCount;
+            slot.arg0 = arg0;
+            slot.arg1 = arg1;
+            slot.arg2 = arg2;
+            writeSequence++;
+            if (writeSequence - readSequence > CAPACITY) {
+                // Overwrote the oldest unread event
+                readSequence++;
+                dropped++;
+            }
+            if (level == ERROR) {
+                // Get failure traces to disk promptly
+                RING.notifyAll();
+            }
+        }
+    }
+
+    private static void drainLoop() {
+        while (true) {
+            synchronized (RING) {
+                try {
+                    RING.wait(DRAIN_INTERVAL_MS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            flush();
+        }
+    }
+
+    /**
+     * Format all buffered events and append them to the log file (and logcat)
+     */
+    static void flush() {
+        synchronized (DRAIN_LOCK) {
+            int count;
+            long droppedSinceLastFlush;
+            synchronized (RING) {
+                count = (int) (writeSequence - readSequence);
+                for (int i = 0; i < count; i++) {
+                    Slot slot = RING[(int) ((readSequence + i) & MASK)];
+                    BATCH[i].copyFrom(slot);
+                    // Release argument references held by the ring
+                    slot.arg0 = null;
+                    slot.arg1 = null;
+                    slot.arg2 = null;
+                }
+                readSequence = writeSequence;
+                droppedSinceLastFlush = dropped;
+                dropped = 0;
+            }
+            if (count == 0 && droppedSinceLastFlush == 0) {
+                return;
+            }
+
+            SimpleDateFormat timeFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.US);
+            timeFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+            StringBuilder lines = new StringBuilder();
+            if (droppedSinceLastFlush > 0) {
+                lines.append(timeFormat.format(new Date())).append("\tWARN\t").append(TAG).append('\t')
+                    .append(Thread.currentThread().getName()).append('\t')
+                    .append(droppedSinceLastFlush).append(" event(s) dropped, buffer full\n");
+            }
+            for (int i = 0; i < count; i++) {
+                Slot slot = BATCH[i];
+                String message = format(slot);
+                // Tab-separated: time, level, tag, thread, message
+                lines.append(timeFormat.format(new Date(slot.time))).append('\t')
+                    .append(LEVEL_NAMES[slot.level]).append('\t')
+                    .append(slot.tag).append('\t')
+                    .append(slot.thread).append('\t')
+                    .append(message.replace("\n", "\n\t")).append('\n');
+                mirrorToLogcat(slot.level, slot.tag, message);
+                slot.arg0 = null;
+                slot.arg1 = null;
+                slot.arg2 = null;
+            }
+            writeToFile(lines.toString());
+        }
+    }
+
+    /**
+     * Flush and return the tail of the log file; empty before init()
+     */
+    static String dump() {
+        flush();
+        File file;
+        synchronized (EventLog.class) {
+            file = logFile;
+        }
+        if (file == null || !file.isFile()) {
+            return "";
+        }
+        synchronized (DRAIN_LOCK) {
+            long length = file.length();
+            int size = (int) Math.min(length, MAX_DUMP_BYTES);
+            byte[] data = new byte[size];
+            try (FileInputStream in = new FileInputStream(file)) {
+                long skip = length - size;
+                while (skip > 0) {
+                    skip -= in.skip(skip);
+                }
+                int read = 0;
+                while (read < size) {
+                    int n = in.read(data, read, size - read);
+                    if (n < 0) {
+                        break;
+                    }
+                    read += n;
+                }
+                return new String(data, 0, read, StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                Log.w(TAG, "Could not read log file: " + e.getMessage());
+                return "";
+            }
+        }
+    }
+
+    /**
+     * Copy the current log files into {@code directory} for sharing
+     * @return the exported file, or null if there is nothing to export
+     */
+    static File export(File directory, String name) throws IOException {
+        flush();
+        File file;
+        synchronized (EventLog.class) {
+            file = logFile;
+        }
+        if (file == null || !file.isFile()) {
+            return null;
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+        File target = new File(directory, name);
+        synchronized (DRAIN_LOCK) {
+            try (OutputStream out = new FileOutputStream(target)) {
+                File rotated = new File(file.getPath() + ".1");
+                if (rotated.isFile()) {
+                    copy(rotated, out);
+                }
+                copy(file, out);
+            }
+        }
+        return target;
+    }
+
+    private static String format(Slot slot) {
+        String template = slot.template != null ? slot.template : "";
+        StringBuilder message = new StringBuilder(template.length() + 32);
+        int used = 0;
+        int start = 0;
+        int index;
+        while (used < slot.argCount && (index = template.indexOf("{}", start)) >= 0) {
+            message.append(template, start, index).append(render(slot.arg(used++)));
+            start = index + 2;
+        }
+        message.append(template, start, template.length());
+        // A trailing exception that no placeholder consumed is logged with its stack trace
+        if (used < slot.argCount && slot.arg(slot.argCount - 1) instanceof Throwable) {
+            StringWriter trace = new StringWriter();
+            ((Throwable) slot.arg(slot.argCount - 1)).printStackTrace(new PrintWriter(trace));
+            message.append('\n').append(trace.toString().trim());
+        }
+        return message.toString();
+    }
+
+    private static String render(Object arg) {
+        if (arg instanceof AnyObjectId) {
+            return ((AnyObjectId) arg).name();
+        }
+        if (arg instanceof Throwable) {
+            Throwable error = (Throwable) arg;
+            return error.getMessage() != null ? error.getMessage() : error.getClass().getSimpleName();
+        }
+        return String.valueOf(arg);
+    }
+
+    private static void mirrorToLogcat(int level, String tag, String message) {
+        switch (level) {
+            case ERROR:
+                Log.e(tag, message);
+                break;
+            case WARN:
+                Log.w(tag, message);
+                break;
+            case INFO:
+                Log.i(tag, message);
+                break;
+            default:
+                Log.d(tag, message);
+                break;
+        }
+    }
+
+    private static void writeToFile(String lines) {
+        File file;
+        synchronized (EventLog.class) {
+            file = logFile;
+        }
+        if (file == null) {
+            return;
+        }
+        if (file.length() > MAX_FILE_BYTES) {
+            File rotated = new File(file.getPath() + ".1");
+            if (rotated.exists() && !rotated.delete()) {
+                Log.w(TAG, "Could not delete " + rotated);
+            }
+            if (!file.renameTo(rotated)) {
+                Log.w(TAG, "Could not rotate " + file);
+            }
+        }
+        try (OutputStream out = new FileOutputStream(file, true)) {
+            out.write(lines.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            Log.w(TAG, "Could not write log file: " + e.getMessage());
+        }
+    }
+
+    private static void copy(File source, OutputStream out) throws IOException {
+        byte[] buffer = new byte[8192];
+        try (FileInputStream in = new FileInputStream(source)) {
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                out.write(buffer, 0, n);
+            }
+        }
+    }
+}
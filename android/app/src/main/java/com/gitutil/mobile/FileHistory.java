@@ -0,0 +1,415 @@
+package com.gitutil.mobile;
+
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.diff.RenameDetector;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per-file commit history with rename following
+ *
+ * Walks history from HEAD and follows the file across renames, so commits
+ * made before a rename are included under their old path. Commits that
+ * delete the file are included too, and the walk continues past them, so a
+ * file deleted at HEAD or deleted and later re-added keeps its older history,
+ * as with git log. Every commit found is
+ * kept in a per repository and path cache that stays valid while HEAD does
+ * not move, so repeated lookups and later pages of the same file are served
+ * without walking trees again. The walk itself stays open between requests
+ * and resumes where it stopped when the cache runs out.
+ */
+final class FileHistory {
+    private static final String TAG = "FileHistory";
+
+    static final int DEFAULT_PAGE_SIZE = 50;
+    static final int MAX_PAGE_SIZE = 500;
+
+    // Paths whose results are cached at the same time, across all repositories
+    private static final int MAX_CACHED_PATHS = 32;
+    // Open walks; each one holds an open Repository
+    private static final int MAX_OPEN_WALKS = 2;
+
+    private final TimelinePager.RepositoryOpener opener;
+    private final Map<String, History> histories = new LinkedHashMap<>(16, 0.75f, true);
+
+    FileHistory(TimelinePager.RepositoryOpener opener) {
+        this.opener = opener;
+    }
+
+    /**
+     * Append up to {@code limit} SNAPSHOT blocks for commits touching {@code filePath},
+     * starting after the commit named by {@code cursor} (empty for the newest)
+     */
+    synchronized void page(String repoPath, String filePath, String cursor, int limit, StringBuilder output)
+            throws Exception {
+        limit = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        filePath = normalize(filePath);
+        if (filePath.isEmpty()) {
+            throw new IllegalArgumentException("File path is required");
+        }
+
+        ObjectId head;
+        try (Repository repository = opener.open(repoPath)) {
+            head = repository.resolve(Constants.HEAD);
+        }
+
+        String key = repoPath + '\0' + filePath;
+        History history = histories.get(key);
+        if (history != null && (head == null || !head.equals(history.head))) {
+            // HEAD moved, e.g. after a rollback; the cached commits may no longer be reachable
+            history.closeWalk();
+            histories.remove(key);
+            history = null;
+        }
+        if (history == null) {
+            history = new History(repoPath, filePath, head);
+            histories.put(key, history);
+            trim();
+        }
+
+        int walkedBefore = history.walked;
+        int start = 0;
+        if (cursor != null && !cursor.isEmpty()) {
+            ObjectId cursorId = ObjectId.fromString(cursor);
+            Integer index = history.position(cursorId);
+            while (index == null && !history.complete) {
+                history.fill(history.entries.size() + limit);
+                index = history.position(cursorId);
+            }
+            if (index == null) {
+                throw new IllegalArgumentException("Cursor is not in the history of " + filePath + ": " + cursor);
+            }
+            start = index + 1;
+        }
+        // One extra entry tells whether another page exists
+        history.fill(start + limit + 1);
+        limitOpenWalks(history);
+
+        int end = Math.min(history.entries.size(), start + limit);
+        for (int i = start; i < end; i++) {
+            history.entries.get(i).append(output);
+        }
+        boolean more = end < history.entries.size();
+
+        output.append("FILE_HISTORY_PATH:").append(filePath).append("\n");
+        output.append("FILE_HISTORY_COUNT:").append(Math.max(0, end - start)).append("\n");
+        if (end > start) {
+            output.append("FILE_HISTORY_CURSOR:").append(history.entries.get(end - 1).id.getName()).append("\n");
+        }
+        output.append("FILE_HISTORY_MORE:").append(more).append("\n");
+        output.append("FILE_HISTORY_CACHED:").append(history.walked == walkedBefore).append("\n");
+    }
+
+    /**
+     * Drop cached results and open walks of a repository, e.g. before it is deleted
+     */
+    synchronized void forget(String repoPath) {
+        String prefix = repoPath + '\0';
+        Iterator<Map.Entry<String, History>> iterator = histories.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, History> entry = iterator.next();
+            if (entry.getKey().startsWith(prefix)) {
+                entry.getValue().closeWalk();
+                iterator.remove();
+            }
+        }
+    }
+
+    private static String normalize(String filePath) {
+        String normalized = filePath == null ? "" : filePath.trim().replace('\\', '/');
+        while (normalized.startsWith("/")) {
+            normalized = normalized.substring(1);
+        }
+        while (normalized.endsWith("/")) {
+            normalized = normalized.substring(0, normalized.length() - 1);
+        }
+        return normalized;
+    }
+
+    private void trim() {
+        Iterator<Map.Entry<String, History>> iterator = histories.entrySet().iterator();
+        while (histories.size() > MAX_CACHED_PATHS && iterator.hasNext()) {
+            Map.Entry<String, History> eldest = iterator.next();
+            iterator.remove();
+            eldest.getValue().closeWalk();
+        }
+    }
+
+    /**
+     * Close the least recently used walks, keeping their cached results
+     */
+    private void limitOpenWalks(History current) {
+        int open = current.hasOpenWalk() ? 1 : 0;
+        List<History> byRecency = new ArrayList<>(histories.values());
+        for (int i = byRecency.size() - 1; i >= 0; i--) {
+            History history = byRecency.get(i);
+            if (history == current || !history.hasOpenWalk()) {
+                continue;
+            }
+            if (open < MAX_OPEN_WALKS) {
+                open++;
+            } else {
+                history.closeWalk();
+            }
+        }
+    }
+
+    /**
+     * A commit that touched the file, with the path the file had in that commit
+     */
+    private static final class Entry {
+        final ObjectId id;
+        final String contributor;
+        final int when;
+        final String title;
+        final String path;
+        final String renamedFrom;
+        final boolean deleted;
+
+        Entry(RevCommit commit, String path, String renamedFrom, boolean deleted) {
+            this.id = commit.copy();
+            this.contributor = commit.getAuthorIdent().getName();
+            this.when = commit.getCommitTime();
+            this.title = commit.getShortMessage();
+            this.path = path;
+            this.renamedFrom = renamedFrom;
+            this.deleted = deleted;
+        }
+
+        void append(StringBuilder output) {
+            output.append("SNAPSHOT_BEGIN\n");
+            output.append("IDENTIFIER:").append(id.getName()).append("\n");
+            output.append("CONTRIBUTOR:").append(contributor).append("\n");
+            output.append("WHEN:").append(when).append("\n");
+            output.append("TITLE:").append(title).append("\n");
+            output.append("FILE_PATH:").append(path).append("\n");
+            if (renamedFrom != null) {
+                output.append("FILE_RENAMED_FROM:").append(renamedFrom).append("\n");
+            }
+            if (deleted) {
+                output.append("FILE_DELETED:true\n");
+            }
+            output.append("SNAPSHOT_END\n");
+        }
+    }
+
+    /**
+     * The file as seen in one commit: its path and, if it exists there, its blob and mode
+     */
+    private static final class Version {
+        final String path;
+        final ObjectId blob;
+        final int mode;
+
+        Version(String path, ObjectId blob, int mode) {
+            this.path = path;
+            this.blob = blob;
+            this.mode = mode;
+        }
+
+        boolean exists() {
+            return blob != null;
+        }
+
+        /**
+         * Same blob and mode, or missing in both
+         */
+        boolean sameContent(Version other) {
+            if (!exists() || !other.exists()) {
+                return !exists() && !other.exists();
+            }
+            return mode == other.mode && blob.equals(other.blob);
+        }
+    }
+
+    /**
+     * Cached commits of one path at one HEAD, plus the walk that produced them
+     *
+     * The followed path is tracked per line of history rather than for the
+     * whole walk: a commit inherits the path from the child that queued it,
+     * so a rename seen on one branch does not hide commits that other branches
+     * made under the new name.
+     */
+    private final class History {
+        final String repoPath;
+        final String filePath;
+        final ObjectId head;
+        final List<Entry> entries = new ArrayList<>();
+        final Map<AnyObjectId, Integer> positions = new HashMap<>();
+        boolean complete;
+        // Commits produced by walks; unchanged during a request means it was served from the cache
+        int walked;
+
+        private Repository repository;
+        private RevWalk walk;
+        // Path (and content) to follow for each queued commit
+        private Map<AnyObjectId, Version> pending;
+
+        History(String repoPath, String filePath, ObjectId head) {
+            this.repoPath = repoPath;
+            this.filePath = filePath;
+            this.head = head;
+            this.complete = head == null;
+        }
+
+        Integer position(AnyObjectId id) {
+            return positions.get(id);
+        }
+
+        boolean hasOpenWalk() {
+            return walk != null;
+        }
+
+        /**
+         * Walk until at least {@code count} entries are cached or history ends
+         */
+        void fill(int count) throws Exception {
+            if (complete || entries.size() >= count) {
+                return;
+            }
+            if (walk == null) {
+                openWalk();
+            }
+            while (entries.size() < count) {
+                // Followed lines are queued down to their root commits, with or without the file;
+                // once none is left, the rest is only reachable through parents skipped as unchanged
+                RevCommit commit = pending.isEmpty() ? null : walk.next();
+                if (commit == null) {
+                    complete = true;
+                    closeWalk();
+                    return;
+                }
+                walked++;
+                Version version = pending.remove(commit);
+                if (version == null) {
+                    // Reachable only through parents skipped because another parent was unchanged
+                    continue;
+                }
+                Entry entry = visit(commit, version);
+                if (entry == null || positions.containsKey(commit)) {
+                    // Unchanged here, or already cached by a walk that was closed
+                    continue;
+                }
+                positions.put(entry.id, entries.size());
+                entries.add(entry);
+            }
+        }
+
+        /**
+         * Queue the parents of {@code commit} with the path they hold the file under
+         * Parents without the file are queued as well, since it may have existed further back
+         * @return the history entry, or null if the commit did not change the file
+         */
+        private Entry visit(RevCommit commit, Version version) throws Exception {
+            RevCommit[] parents = commit.getParents();
+            Version[] before = new Version[parents.length];
+            for (int i = 0; i < parents.length; i++) {
+                walk.parseHeaders(parents[i]);
+                before[i] = version(parents[i], version.path);
+                if (before[i].sameContent(version)) {
+                    // Same as in this parent: history of the file continues there only, as git log does
+                    queue(parents[i], before[i]);
+                    return null;
+                }
+            }
+
+            String renamedFrom = null;
+            for (int i = 0; i < parents.length; i++) {
+                Version parentVersion = before[i];
+                if (!parentVersion.exists() && version.exists()) {
+                    String oldPath = renamedFrom(parents[i], commit, version.path);
+                    if (oldPath != null) {
+                        parentVersion = version(parents[i], oldPath);
+                        renamedFrom = oldPath;
+                    }
+                }
+                queue(parents[i], parentVersion);
+            }
+            if (!version.exists() && parents.length == 0) {
+                // A root commit without the file
+                return null;
+            }
+            return new Entry(commit, version.path, renamedFrom, !version.exists());
+        }
+
+        private void queue(RevCommit parent, Version version) {
+            // The first child to reach a commit decides its path
+            if (!pending.containsKey(parent)) {
+                pending.put(parent, version);
+            }
+        }
+
+        private Version version(RevCommit commit, String path) throws Exception {
+            try (TreeWalk treeWalk = TreeWalk.forPath(repository, path, commit.getTree())) {
+                if (treeWalk == null || treeWalk.isSubtree()) {
+                    return new Version(path, null, 0);
+                }
+                return new Version(path, treeWalk.getObjectId(0), treeWalk.getRawMode(0));
+            }
+        }
+
+        /**
+         * The path {@code path} had in {@code parent} if {@code commit} renamed or copied it there
+         */
+        private String renamedFrom(RevCommit parent, RevCommit commit, String path) throws Exception {
+            try (TreeWalk treeWalk = new TreeWalk(repository)) {
+                treeWalk.setRecursive(true);
+                treeWalk.setFilter(TreeFilter.ANY_DIFF);
+                treeWalk.addTree(parent.getTree());
+                treeWalk.addTree(commit.getTree());
+                RenameDetector detector = new RenameDetector(repository);
+                detector.addAll(DiffEntry.scan(treeWalk));
+                for (DiffEntry entry : detector.compute()) {
+                    if ((entry.getChangeType() == DiffEntry.ChangeType.RENAME
+                            || entry.getChangeType() == DiffEntry.ChangeType.COPY)
+                            && entry.getNewPath().equals(path)) {
+                        return entry.getOldPath();
+                    }
+                }
+            }
+            return null;
+        }
+
+        private void openWalk() throws Exception {
+            repository = opener.open(repoPath);
+            try {
+                walk = new RevWalk(repository);
+                RevCommit start = walk.parseCommit(head);
+                pending = new HashMap<>();
+                pending.put(start, version(start, filePath));
+                walk.markStart(start);
+                if (!entries.isEmpty()) {
+                    EventLog.d(TAG, "Re-walking history of {} past {} cached commit(s)", filePath, entries.size());
+                }
+            } catch (Exception e) {
+                closeWalk();
+                throw e;
+            }
+        }
+
+        void closeWalk() {
+            if (walk != null) {
+                walk.close();
+                walk = null;
+            }
+            if (repository != null) {
+                repository.close();
+                repository = null;
+            }
+            pending = null;
+        }
+    }
+}
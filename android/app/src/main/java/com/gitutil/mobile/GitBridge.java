@@ -1,14 +1,12 @@
 package com.gitutil.mobile;
 
-import android.util.Log;
 import android.webkit.JavascriptInterface;
 
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.PushCommand;
-import org.eclipse.jgit.api.ResetCommand;
+import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.Repository;
-import org.eclipse.jgit.revwalk.RevCommit;
 import org.eclipse.jgit.revwalk.RevWalk;
 import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
 import org.eclipse.jgit.transport.RefSpec;
@@ -23,7 +21,9 @@ import java.net.HttpURLConnection;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 import java.util.Locale;
 
 /**
@@ -32,7 +32,27 @@ import java.util.Locale;
  */
 public class GitBridge {
     private static final String TAG = "GitBridge";
-    private static final String DEFAULT_WORKSPACE_PATH = "/sdcard/GitUtil/repos";
+    static final String DEFAULT_WORKSPACE_PATH = "/sdcard/GitUtil/repos";
+    // Maximum number of individual files listed by repo-status
+    private static final int MAX_STATUS_FILES = 200;
+
+    private final String workspacePath;
+    private final TimelinePager timelinePager = new TimelinePager(this::openRepository);
+    private final FileHistory fileHistory = new FileHistory(this::openRepository);
+    private final BatchRollback batchRollback = new BatchRollback(this::openRepository);
+    private final PrefetchScheduler prefetchScheduler;
+
+    public GitBridge() {
+        this(DEFAULT_WORKSPACE_PATH);
+    }
+
+    /**
+     * Bridge rooted at another workspace directory, used by the JVM tests
+     */
+    GitBridge(String workspacePath) {
+        this.workspacePath = workspacePath;
+        this.prefetchScheduler = new PrefetchScheduler(timelinePager, workspacePath);
+    }
 
     @JavascriptInterface
     public String executeWrapper(String wrapperName, String argsJson) {
@@ -43,32 +63,83 @@ public class GitBridge {
                 case "check-location":
                     return checkLocation(args.getString(0));
                 case "pull-timeline":
-                    return pullTimeline(args.getString(0));
+                    // Optional paging parameters: offset and page size
+                    int offset = args.length() > 1 ? args.getInt(1) : 0;
+                    int limit = args.length() > 2 ? args.getInt(2) : TimelinePager.DEFAULT_PAGE_SIZE;
+                    // Optional: true to walk all branches, remote-tracking branches and tags; true to include bodies
+                    return pullTimeline(args.getString(0), offset, limit, args.optBoolean(3, false), args.optBoolean(4, false));
+                case "file-history":
+                    // Parameters: repository path, file path; optional: cursor (last commit of the previous page), page size
+                    return fileHistory(args.getString(0), args.getString(1), args.optString(2, ""),
+                        args.optInt(3, FileHistory.DEFAULT_PAGE_SIZE));
                 case "apply-rollback":
                     // Optional third parameter: GitHub token for authentication
                     String token = args.length() > 2 ? args.getString(2) : null;
                     return applyRollback(args.getString(0), args.getString(1), token);
+                case "batch-rollback":
+                    // First parameter: [{"path": ..., "commit": ..., "token"?: ...}, ...]
+                    // Optional second parameter: GitHub token used for entries without their own
+                    return batchRollback(args.getJSONArray(0), args.length() > 1 ? args.getString(1) : null);
+                case "prefetch-timelines":
+                    // First parameter: page size the UI will request; optional second: workspace path
+                    return prefetchTimelines(args.getInt(0), args.length() > 1 ? args.getString(1) : workspacePath);
+                case "prefetch-cancel":
+                    prefetchScheduler.cancel();
+                    return createSuccessResponse("PREFETCH_CANCELLED");
                 case "get-default-workspace":
                     return getDefaultWorkspace();
                 case "ensure-workspace":
                     return ensureWorkspace();
                 case "list-repositories":
-                    return listRepositories(args.length() > 0 ? args.getString(0) : DEFAULT_WORKSPACE_PATH);
+                    return listRepositories(args.length() > 0 ? args.getString(0) : workspacePath);
                 case "clone-repository":
                     // Optional third parameter: GitHub token for authentication (for private repos)
                     String cloneToken = args.length() > 2 ? args.getString(2) : null;
-                    return cloneRepository(args.getString(0), args.length() > 1 ? args.getString(1) : null, cloneToken);
+                    // Optional fourth parameter: false to bypass the shared object store
+                    boolean shared = args.optBoolean(3, true);
+                    // Optional fifth parameter: sparse checkout patterns (gitignore syntax)
+                    List<String> sparsePatterns = new ArrayList<>();
+                    JSONArray patternsJson = args.optJSONArray(4);
+                    for (int i = 0; patternsJson != null && i < patternsJson.length(); i++) {
+                        String pattern = patternsJson.getString(i).trim();
+                        if (!pattern.isEmpty()) {
+                            sparsePatterns.add(pattern);
+                        }
+                    }
+                    return cloneRepository(args.getString(0), args.length() > 1 ? args.getString(1) : null, cloneToken, shared,
+                        sparsePatterns);
+                case "shared-store-gc":
+                    return sharedStoreGc();
                 case "list-github-repos":
-                    return listGitHubRepositories(args.getString(0));
+                    // Optional second parameter: 1-based result page
+                    return listGitHubRepositories(args.getString(0), args.length() > 1 ? args.getInt(1) : 1);
                 case "validate-github-token":
                     return validateGitHubToken(args.getString(0));
                 case "cleanup-repository":
                     return cleanupRepository(args.getString(0));
+                case "repo-status":
+                    return repoStatus(args.getString(0));
+                case "list-refs":
+                    // Optional parameters: ref prefix (e.g. "backup/"), offset and page size
+                    return listRefs(args.getString(0), args.optString(1, ""), args.optInt(2, 0),
+                        args.optInt(3, RefLister.DEFAULT_PAGE_SIZE));
+                case "prune-backup-refs":
+                    // Parameters: path, age in days; optional: number of newest backups to keep, dry run
+                    return pruneBackupRefs(args.getString(0), args.getInt(1), args.optInt(2, 1), args.optBoolean(3, false));
+                case "storage-stats":
+                    return createSuccessResponse(StorageProfile.statistics());
+                case "startup-mark":
+                    StartupPipeline.mark(args.getString(0));
+                    return createSuccessResponse("MARKED:" + args.getString(0));
+                case "startup-metrics":
+                    return createSuccessResponse(StartupPipeline.metrics());
+                case "dump-logs":
+                    return dumpLogs();
                 default:
                     return createErrorResponse("Unknown wrapper: " + wrapperName);
             }
         } catch (Exception e) {
-            Log.e(TAG, "Error executing wrapper", e);
+            EventLog.e(TAG, "Error executing wrapper", e);
             return createErrorResponse("Error: " + e.getMessage());
         }
     }
@@ -78,11 +149,16 @@ public class GitBridge {
      * Reduces code duplication and ensures consistent error handling
      */
     private Repository openRepository(String path) throws Exception {
+        StorageProfile.ensureInstalled();
         File gitDir = new File(path, ".git");
         if (!gitDir.exists() || !gitDir.isDirectory()) {
             gitDir = new File(path);
         }
 
+        Repository warm = StartupPipeline.takeWarmRepository(new File(path, ".git"));
+        if (warm != null) {
+            return warm;
+        }
         return new FileRepositoryBuilder()
             .setGitDir(gitDir.getName().equals(".git") ? gitDir : new File(path, ".git"))
             .readEnvironment()
@@ -98,35 +174,68 @@ public class GitBridge {
                 return createErrorResponse("LOCATION_INVALID\n");
             }
         } catch (Exception e) {
-            Log.e(TAG, "Error checking location", e);
+            EventLog.e(TAG, "Error checking location", e);
             return createErrorResponse("LOCATION_INVALID\n");
         }
     }
 
-    private String pullTimeline(String path) {
-        try (Repository repository = openRepository(path)) {
-            StringBuilder output = new StringBuilder();
-            
-            try (Git git = new Git(repository)) {
-                Iterable<RevCommit> commits = git.log().setMaxCount(100).call();
-                
-                for (RevCommit commit : commits) {
-                    output.append("SNAPSHOT_BEGIN\n");
-                    output.append("IDENTIFIER:").append(commit.getName()).append("\n");
-                    output.append("CONTRIBUTOR:").append(commit.getAuthorIdent().getName()).append("\n");
-                    output.append("WHEN:").append(commit.getCommitTime()).append("\n");
-                    output.append("TITLE:").append(commit.getShortMessage()).append("\n");
-                    output.append("SNAPSHOT_END\n");
+    /**
+     * Fetch one page of the commit history reachable from HEAD, or from all refs
+     * Consecutive pages continue the same walk instead of starting over
+     */
+    private String pullTimeline(String path, int offset, int limit, boolean allRefs, boolean withBody) {
+        try {
+            if (offset == 0) {
+                prefetchScheduler.recordOpen(path);
+                // Prefetched pages only exist for the default HEAD timeline
+                String prefetched = !allRefs && !withBody ? prefetchScheduler.take(path, limit) : null;
+                if (prefetched != null) {
+                    return createSuccessResponse(prefetched);
                 }
             }
-            
+            StringBuilder output = new StringBuilder();
+            timelinePager.page(path, offset, limit, allRefs, withBody, output);
             return createSuccessResponse(output.toString());
         } catch (Exception e) {
-            Log.e(TAG, "Error pulling timeline", e);
+            timelinePager.release(path);
+            EventLog.e(TAG, "Error pulling timeline", e);
             return createErrorResponse("Failed to fetch commits: " + e.getMessage());
         }
     }
 
+    /**
+     * Fetch one page of the commits that touched a file, following renames
+     * Results are cached per repository and path until HEAD moves
+     */
+    private String fileHistory(String path, String filePath, String cursor, int limit) {
+        try {
+            StringBuilder output = new StringBuilder();
+            fileHistory.page(path, filePath, cursor, limit, output);
+            return createSuccessResponse(output.toString());
+        } catch (Exception e) {
+            EventLog.e(TAG, "Error fetching file history", e);
+            return createErrorResponse("FILE_HISTORY_FAILED\n" + e.getMessage());
+        }
+    }
+
+    /**
+     * Warm the first timeline page of the repositories the user is most likely to open next
+     * Runs in the background; the response only reports how many candidates were found
+     */
+    private String prefetchTimelines(int pageSize, String workspacePath) {
+        List<String> candidates = new ArrayList<>();
+        File[] files = new File(workspacePath).listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (new File(file, ".git").isDirectory()) {
+                    candidates.add(file.getAbsolutePath());
+                }
+            }
+        }
+        prefetchScheduler.schedule(candidates, pageSize);
+        return createSuccessResponse("PREFETCH_CANDIDATES:" + candidates.size());
+    }
+
     /**
      * Apply rollback to a specific commit with step tracking and transactional behavior
      * 
@@ -140,16 +249,13 @@ public class GitBridge {
      * @return JSON response with success or error and step tracking information
      */
     private String applyRollback(String path, String commitHash, String githubToken) {
-        // Create SimpleDateFormat locally to ensure thread safety
-        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.US);
         StringBuilder stepOutput = new StringBuilder();
         
-        Log.i(TAG, "========================================");
-        Log.i(TAG, "Apply Rollback Operation Started");
-        Log.i(TAG, "========================================");
-        Log.i(TAG, "Timestamp: " + dateFormat.format(new Date()));
-        Log.i(TAG, "Repository Path: " + path);
-        Log.i(TAG, "Target Commit: " + commitHash);
+        EventLog.i(TAG, "========================================");
+        EventLog.i(TAG, "Apply Rollback Operation Started");
+        EventLog.i(TAG, "========================================");
+        EventLog.i(TAG, "Repository Path: {}", path);
+        EventLog.i(TAG, "Target Commit: {}", commitHash);
         
         String backupBranchName = null;
         ObjectId currentHead = null;
@@ -157,28 +263,38 @@ public class GitBridge {
         try (Repository repository = openRepository(path)) {
             // Step 1: Validate repository
             stepOutput.append("STEP_STATUS:validate:in_progress\n");
-            Log.i(TAG, "Validating repository...");
+            EventLog.i(TAG, "Validating repository...");
             
             if (!repository.getObjectDatabase().exists()) {
                 stepOutput.append("STEP_STATUS:validate:failed\n");
-                Log.e(TAG, "ERROR: Repository validation failed");
+                EventLog.e(TAG, "ERROR: Repository validation failed");
                 return createErrorResponse(stepOutput.toString(), "ROLLBACK_FAILED\nInvalid repository");
             }
             
-            Log.i(TAG, "Repository validated successfully");
+            EventLog.i(TAG, "Repository validated successfully");
             
             try (Git git = new Git(repository)) {
-                Log.i(TAG, "Verifying commit exists in repository...");
+                EventLog.i(TAG, "Verifying commit exists in repository...");
                 ObjectId commitId = repository.resolve(commitHash);
                 if (commitId == null) {
                     stepOutput.append("STEP_STATUS:validate:failed\n");
                     stepOutput.append("STEP_DETAIL:Commit ").append(commitHash).append(" not found\n");
-                    Log.e(TAG, "ERROR: Commit verification failed");
-                    Log.e(TAG, "Commit " + commitHash + " not found in this repository");
+                    EventLog.e(TAG, "ERROR: Commit verification failed");
+                    EventLog.e(TAG, "Commit {} not found in this repository", commitHash);
                     return createErrorResponse(stepOutput.toString(), "ROLLBACK_FAILED\nCommit not found: " + commitHash);
                 }
-                Log.i(TAG, "✓ Commit " + commitHash + " verified");
+                EventLog.i(TAG, "✓ Commit {} verified", commitHash);
                 stepOutput.append("STEP_DETAIL:Commit verified: ").append(commitHash, 0, Math.min(commitHash.length(), 8)).append("\n");
+                // The all-refs timeline also lists other branches and tags; resetting and force-pushing
+                // the current branch to one of those would replace it with unrelated history
+                if (!isReachableFromHead(repository, commitId)) {
+                    stepOutput.append("STEP_STATUS:validate:failed\n");
+                    stepOutput.append("STEP_DETAIL:Commit ").append(commitHash).append(" is not in the history of the current branch\n");
+                    EventLog.e(TAG, "ERROR: Commit {} is not an ancestor of HEAD", commitHash);
+                    return createErrorResponse(stepOutput.toString(),
+                        "ROLLBACK_FAILED\nCommit is not in the history of the current branch: " + commitHash);
+                }
+                reportUncommittedChanges(repository, stepOutput);
                 stepOutput.append("STEP_STATUS:validate:completed\n");
                 
                 // Check if remote exists (cache result for later use)
@@ -187,12 +303,12 @@ public class GitBridge {
                 // Step 2: Create backup branch
                 stepOutput.append("STEP_STATUS:backup:in_progress\n");
                 currentHead = repository.resolve("HEAD");
-                Log.i(TAG, "Current HEAD: " + (currentHead != null ? currentHead.getName() : "unknown"));
+                EventLog.i(TAG, "Current HEAD: {}", currentHead);
                 
                 if (currentHead == null) {
                     stepOutput.append("STEP_STATUS:backup:failed\n");
                     stepOutput.append("STEP_DETAIL:Could not determine current HEAD\n");
-                    Log.e(TAG, "ERROR: Could not determine current HEAD");
+                    EventLog.e(TAG, "ERROR: Could not determine current HEAD");
                     return createErrorResponse(stepOutput.toString(), "ROLLBACK_FAILED\nCould not determine current HEAD");
                 }
                 
@@ -200,7 +316,7 @@ public class GitBridge {
                 SimpleDateFormat timestampFormat = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.US);
                 String timestamp = timestampFormat.format(new Date());
                 backupBranchName = "backup/before-rollback-" + timestamp;
-                Log.i(TAG, "Creating backup branch: " + backupBranchName);
+                EventLog.i(TAG, "Creating backup branch: {}", backupBranchName);
                 stepOutput.append("STEP_DETAIL:Creating backup branch: ").append(backupBranchName).append("\n");
                 
                 try {
@@ -208,14 +324,14 @@ public class GitBridge {
                         .setName(backupBranchName)
                         .setStartPoint(currentHead.getName())
                         .call();
-                    Log.i(TAG, "✓ Backup branch created successfully: " + backupBranchName);
+                    EventLog.i(TAG, "✓ Backup branch created successfully: {}", backupBranchName);
                     stepOutput.append("STEP_DETAIL:Backup branch created successfully\n");
                     
                     // Push backup branch to remote if remote exists
                     if (hasOrigin) {
                         try {
                             stepOutput.append("STEP_DETAIL:Pushing backup branch to remote\n");
-                            Log.i(TAG, "Pushing backup branch to remote: " + backupBranchName);
+                            EventLog.i(TAG, "Pushing backup branch to remote: {}", backupBranchName);
                             
                             PushCommand backupPushCommand = git.push()
                                 .setRemote("origin")
@@ -229,49 +345,46 @@ public class GitBridge {
                             }
                             
                             backupPushCommand.call();
-                            Log.i(TAG, "✓ Backup branch pushed to remote successfully");
+                            EventLog.i(TAG, "✓ Backup branch pushed to remote successfully");
                             stepOutput.append("STEP_DETAIL:Backup branch pushed to remote successfully\n");
                         } catch (Exception pushEx) {
                             // Don't fail the entire operation if backup push fails
-                            Log.w(TAG, "Warning: Failed to push backup branch to remote: " + pushEx.getMessage());
+                            EventLog.w(TAG, "Warning: Failed to push backup branch to remote: {}", pushEx);
                             stepOutput.append("STEP_DETAIL:Warning: Failed to push backup branch to remote (will be kept locally only)\n");
                         }
                     } else {
                         stepOutput.append("STEP_DETAIL:No remote configured - backup branch kept locally only\n");
-                        Log.i(TAG, "No remote configured - backup branch kept locally only");
+                        EventLog.i(TAG, "No remote configured - backup branch kept locally only");
                     }
                     
                     stepOutput.append("STEP_STATUS:backup:completed\n");
                 } catch (Exception branchEx) {
                     stepOutput.append("STEP_STATUS:backup:failed\n");
                     stepOutput.append("STEP_DETAIL:Failed to create backup branch\n");
-                    Log.e(TAG, "ERROR: Failed to create backup branch");
-                    Log.e(TAG, "Backup branch error: " + (branchEx.getMessage() != null ? branchEx.getMessage() : "unknown"));
+                    EventLog.e(TAG, "ERROR: Failed to create backup branch");
+                    EventLog.e(TAG, "Backup branch error: {}", branchEx);
                     return createErrorResponse(stepOutput.toString(), "ROLLBACK_FAILED\nFailed to create backup branch");
                 }
                 
                 // Step 3: Reset to target commit
                 stepOutput.append("STEP_STATUS:reset:in_progress\n");
-                Log.i(TAG, "Executing hard reset to: " + commitHash);
+                EventLog.i(TAG, "Executing hard reset to: {}", commitHash);
                 stepOutput.append("STEP_DETAIL:Reverting branch to commit: ").append(commitHash, 0, Math.min(commitHash.length(), 8)).append("\n");
                 
                 try {
-                    git.reset()
-                        .setMode(ResetCommand.ResetType.HARD)
-                        .setRef(commitHash)
-                        .call();
+                    ParallelCheckout.hardReset(git, commitHash);
                     
                     // Get new HEAD
                     ObjectId newHead = repository.resolve("HEAD");
-                    Log.i(TAG, "✓ Reset successful");
-                    Log.i(TAG, "Previous HEAD: " + (currentHead != null ? currentHead.getName() : "unknown"));
-                    Log.i(TAG, "New HEAD: " + (newHead != null ? newHead.getName() : "unknown"));
+                    EventLog.i(TAG, "✓ Reset successful");
+                    EventLog.i(TAG, "Previous HEAD: {}", currentHead);
+                    EventLog.i(TAG, "New HEAD: {}", newHead);
                     stepOutput.append("STEP_DETAIL:Reset successful\n");
                     stepOutput.append("STEP_STATUS:reset:completed\n");
                 } catch (Exception resetEx) {
                     stepOutput.append("STEP_STATUS:reset:failed\n");
                     stepOutput.append("STEP_DETAIL:Git reset failed\n");
-                    Log.e(TAG, "ERROR: Git reset failed");
+                    EventLog.e(TAG, "ERROR: Git reset failed");
                     
                     // Rollback: Restore from backup branch
                     rollbackToBackup(git, backupBranchName, currentHead, stepOutput);
@@ -284,7 +397,7 @@ public class GitBridge {
                 stepOutput.append("STEP_STATUS:push:in_progress\n");
                 String currentBranch = repository.getBranch();
                 stepOutput.append("STEP_DETAIL:Pushing changes to remote branch: ").append(currentBranch).append("\n");
-                Log.i(TAG, "Current branch: " + currentBranch);
+                EventLog.i(TAG, "Current branch: {}", currentBranch);
                 
                 // Check if remote exists (use cached result)
                 if (hasOrigin) {
@@ -299,7 +412,7 @@ public class GitBridge {
                         
                         // Add credentials if GitHub token is provided
                         if (githubToken != null && !githubToken.trim().isEmpty()) {
-                            Log.i(TAG, "Using provided GitHub token for authentication");
+                            EventLog.i(TAG, "Using provided GitHub token for authentication");
                             // GitHub personal access tokens should be used as password with a dummy username
                             pushCommand.setCredentialsProvider(
                                 new UsernamePasswordCredentialsProvider("x-access-token", githubToken)
@@ -308,14 +421,14 @@ public class GitBridge {
                         
                         pushCommand.call();
                         
-                        Log.i(TAG, "✓ Successfully pushed to remote");
+                        EventLog.i(TAG, "✓ Successfully pushed to remote");
                         stepOutput.append("STEP_STATUS:push:completed\n");
                         stepOutput.append("STEP_DETAIL:Successfully pushed to remote\n");
                     } catch (Exception pushEx) {
                         stepOutput.append("STEP_STATUS:push:failed\n");
                         stepOutput.append("STEP_DETAIL:Push to remote failed\n");
-                        Log.e(TAG, "ERROR: Push to remote failed");
-                        Log.e(TAG, "Push error: " + (pushEx.getMessage() != null ? pushEx.getMessage() : "unknown"));
+                        EventLog.e(TAG, "ERROR: Push to remote failed");
+                        EventLog.e(TAG, "Push error: {}", pushEx);
                         
                         // Rollback: Restore from backup branch
                         rollbackToBackup(git, backupBranchName, currentHead, stepOutput);
@@ -327,20 +440,20 @@ public class GitBridge {
                     // No remote configured - skip push and succeed
                     stepOutput.append("STEP_STATUS:push:completed\n");
                     stepOutput.append("STEP_DETAIL:No remote configured - push skipped\n");
-                    Log.i(TAG, "No remote configured - push skipped");
+                    EventLog.i(TAG, "No remote configured - push skipped");
                 }
                 
                 // Success - keep backup branch for user reference (not deleted on success)
-                Log.i(TAG, "Backup branch retained: " + backupBranchName);
+                EventLog.i(TAG, "Backup branch retained: {}", backupBranchName);
                 
-                Log.i(TAG, "========================================");
+                EventLog.i(TAG, "========================================");
                 return createSuccessResponse(stepOutput.toString() + "ROLLBACK_SUCCESS: " + commitHash);
             }
         } catch (Exception e) {
-            Log.e(TAG, "❌ Rollback failed");
-            Log.e(TAG, "Exception type: " + e.getClass().getName());
-            Log.e(TAG, "Exception message: " + (e.getMessage() != null ? e.getMessage() : "null"));
-            Log.e(TAG, "========================================");
+            EventLog.e(TAG, "❌ Rollback failed");
+            EventLog.e(TAG, "Exception type: {}", e.getClass().getName());
+            EventLog.e(TAG, "Exception message: {}", e);
+            EventLog.e(TAG, "========================================");
             
             String errorMsg = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
             return createErrorResponse(stepOutput.toString(), "ROLLBACK_FAILED\n" + errorMsg);
@@ -353,17 +466,14 @@ public class GitBridge {
      */
     private void rollbackToBackup(Git git, String backupBranchName, ObjectId originalHead, StringBuilder stepOutput) {
         stepOutput.append("STEP_DETAIL:Transaction failed - initiating rollback\n");
-        Log.w(TAG, "Transaction failed - attempting to restore from backup");
+        EventLog.w(TAG, "Transaction failed - attempting to restore from backup");
         
         try {
             if (backupBranchName != null && git.getRepository().resolve(backupBranchName) != null) {
                 stepOutput.append("STEP_DETAIL:Restoring from backup branch: ").append(backupBranchName).append("\n");
-                Log.i(TAG, "Restoring from backup branch: " + backupBranchName);
+                EventLog.i(TAG, "Restoring from backup branch: {}", backupBranchName);
                 
-                git.reset()
-                    .setMode(ResetCommand.ResetType.HARD)
-                    .setRef(backupBranchName)
-                    .call();
+                ParallelCheckout.hardReset(git, backupBranchName);
                 
                 // Delete the backup branch after restoring
                 git.branchDelete()
@@ -373,22 +483,157 @@ public class GitBridge {
                 
                 String headStr = originalHead != null ? originalHead.getName().substring(0, 8) : "unknown";
                 stepOutput.append("STEP_DETAIL:State restored to original HEAD: ").append(headStr).append("\n");
-                Log.i(TAG, "State restored to original HEAD: " + headStr);
+                EventLog.i(TAG, "State restored to original HEAD: {}", headStr);
             } else {
                 stepOutput.append("STEP_DETAIL:Backup branch not available for restoration\n");
-                Log.w(TAG, "Backup branch not available for restoration");
+                EventLog.w(TAG, "Backup branch not available for restoration");
             }
         } catch (Exception rollbackEx) {
             stepOutput.append("STEP_DETAIL:Warning: Rollback restoration failed\n");
-            Log.e(TAG, "Error during rollback restoration: " + rollbackEx.getMessage());
+            EventLog.e(TAG, "Error during rollback restoration: {}", rollbackEx);
         }
     }
 
+    /**
+     * Roll back several repositories as one transaction
+     * Pushes start only after every repository was reset locally; any failure
+     * restores all repositories from their backup branches
+     */
+    private String batchRollback(JSONArray targetsJson, String githubToken) throws Exception {
+        List<BatchRollback.Target> targets = new ArrayList<>();
+        for (int i = 0; i < targetsJson.length(); i++) {
+            JSONObject target = targetsJson.getJSONObject(i);
+            String token = target.has("token") ? target.getString("token") : githubToken;
+            targets.add(new BatchRollback.Target(target.getString("path"), target.getString("commit"), token));
+        }
+        BatchRollback.Outcome outcome = batchRollback.run(targets);
+        return outcome.success
+            ? createSuccessResponse(outcome.output)
+            : createErrorResponse(outcome.output, outcome.error);
+    }
+
+    /**
+     * Whether HEAD can reach {@code commitId}
+     * An unborn HEAD passes; the backup step reports it
+     */
+    static boolean isReachableFromHead(Repository repository, ObjectId commitId) throws Exception {
+        ObjectId head = repository.resolve(Constants.HEAD);
+        if (head == null) {
+            return true;
+        }
+        try (RevWalk revWalk = new RevWalk(repository)) {
+            return revWalk.isMergedInto(revWalk.parseCommit(commitId), revWalk.parseCommit(head));
+        }
+    }
+
+    /**
+     * Add a warning to the step output if the working tree has uncommitted changes
+     * A failing status check never blocks the rollback itself
+     */
+    private void reportUncommittedChanges(Repository repository, StringBuilder stepOutput) {
+        try {
+            WorkingTreeStatus.Result status = WorkingTreeStatus.compute(repository);
+            int discarded = status.trackedChangeCount();
+            if (discarded > 0) {
+                stepOutput.append("STEP_DETAIL:Warning: ").append(discarded)
+                    .append(" uncommitted change(s) will be discarded by the reset\n");
+                EventLog.w(TAG, "Working tree has {} uncommitted change(s)", discarded);
+            }
+            if (!status.untracked.isEmpty()) {
+                stepOutput.append("STEP_DETAIL:").append(status.untracked.size())
+                    .append(" untracked path(s) are kept by the reset\n");
+            }
+        } catch (Exception e) {
+            EventLog.w(TAG, "Could not determine working tree status: {}", e);
+        }
+    }
+
+    /**
+     * Report the working tree status of a repository
+     * Uses index stat data so unchanged files are never read; results are cached
+     * until the working tree, the index or HEAD changes
+     */
+    private String repoStatus(String path) {
+        try (Repository repository = openRepository(path)) {
+            WorkingTreeStatus.Result status = WorkingTreeStatus.compute(repository);
+
+            StringBuilder output = new StringBuilder();
+            output.append("STATUS_BEGIN\n");
+            output.append("BRANCH:").append(status.branch).append("\n");
+            output.append("STATE:").append(status.isClean() ? "clean" : "dirty").append("\n");
+            output.append("STAGED:").append(status.staged.size()).append("\n");
+            output.append("MODIFIED:").append(status.modified.size()).append("\n");
+            output.append("MISSING:").append(status.missing.size()).append("\n");
+            output.append("UNTRACKED:").append(status.untracked.size()).append("\n");
+            output.append("FILES_READ:").append(status.fromCache ? 0 : status.filesRead).append("\n");
+            output.append("CACHED:").append(status.fromCache).append("\n");
+            SparseCheckout sparse = SparseCheckout.load(repository);
+            if (sparse != null) {
+                output.append("SPARSE_PATTERNS:").append(sparse.patterns().size()).append("\n");
+            }
+
+            int remaining = MAX_STATUS_FILES;
+            remaining = appendStatusFiles(output, "S", status.staged, remaining);
+            remaining = appendStatusFiles(output, "M:", status.modified, remaining);
+            remaining = appendStatusFiles(output, "D:", status.missing, remaining);
+            appendStatusFiles(output, "U:", status.untracked, remaining);
+
+            output.append("STATUS_END");
+            return createSuccessResponse(output.toString());
+        } catch (Exception e) {
+            EventLog.e(TAG, "Error computing repository status", e);
+            return createErrorResponse("STATUS_FAILED\n" + e.getMessage());
+        }
+    }
+
+    /**
+     * List refs with their tip commit time and subject, one page at a time
+     */
+    private String listRefs(String path, String prefix, int offset, int limit) {
+        try (Repository repository = openRepository(path)) {
+            StringBuilder output = new StringBuilder();
+            RefLister.list(repository, prefix, offset, limit, output);
+            return createSuccessResponse(output.toString());
+        } catch (Exception e) {
+            EventLog.e(TAG, "Error listing refs", e);
+            return createErrorResponse("LIST_REFS_FAILED\n" + e.getMessage());
+        }
+    }
+
+    /**
+     * Delete old local backup branches in a single ref transaction
+     */
+    private String pruneBackupRefs(String path, int maxAgeDays, int keepLatest, boolean dryRun) {
+        try (Repository repository = openRepository(path)) {
+            StringBuilder output = new StringBuilder();
+            RefLister.pruneBackups(repository, maxAgeDays, keepLatest, dryRun, output);
+            return createSuccessResponse(output.toString());
+        } catch (Exception e) {
+            EventLog.e(TAG, "Error pruning backup branches", e);
+            return createErrorResponse("PRUNE_FAILED\n" + e.getMessage());
+        }
+    }
+
+    /**
+     * Append STATUS_FILE lines for up to {@code remaining} entries
+     * @return the number of lines that may still be appended
+     */
+    private int appendStatusFiles(StringBuilder output, String prefix, List<String> files, int remaining) {
+        for (String file : files) {
+            if (remaining <= 0) {
+                break;
+            }
+            output.append("STATUS_FILE:").append(prefix).append(file).append("\n");
+            remaining--;
+        }
+        return remaining;
+    }
+
     /**
      * Get the default workspace path
      */
     private String getDefaultWorkspace() {
-        return createSuccessResponse(DEFAULT_WORKSPACE_PATH);
+        return createSuccessResponse(workspacePath);
     }
 
     /**
@@ -396,17 +641,17 @@ public class GitBridge {
      */
     private String ensureWorkspace() {
         try {
-            File workspaceDir = new File(DEFAULT_WORKSPACE_PATH);
+            File workspaceDir = new File(workspacePath);
             if (!workspaceDir.exists()) {
                 if (workspaceDir.mkdirs()) {
-                    return createSuccessResponse("WORKSPACE_CREATED:" + DEFAULT_WORKSPACE_PATH);
+                    return createSuccessResponse("WORKSPACE_CREATED:" + workspacePath);
                 } else {
                     return createErrorResponse("Failed to create workspace directory");
                 }
             }
-            return createSuccessResponse("WORKSPACE_EXISTS:" + DEFAULT_WORKSPACE_PATH);
+            return createSuccessResponse("WORKSPACE_EXISTS:" + workspacePath);
         } catch (Exception e) {
-            Log.e(TAG, "Error ensuring workspace", e);
+            EventLog.e(TAG, "Error ensuring workspace", e);
             return createErrorResponse("Error creating workspace: " + e.getMessage());
         }
     }
@@ -432,6 +677,7 @@ public class GitBridge {
                         if (gitDir.exists() && gitDir.isDirectory()) {
                             output.append("REPO_NAME:").append(file.getName()).append("\n");
                             output.append("REPO_PATH:").append(file.getAbsolutePath()).append("\n");
+                            output.append("REPO_STATE:").append(repositoryState(file)).append("\n");
                             output.append("REPO_SEPARATOR\n");
                         }
                     }
@@ -441,58 +687,112 @@ public class GitBridge {
             output.append("REPOS_END");
             return createSuccessResponse(output.toString());
         } catch (Exception e) {
-            Log.e(TAG, "Error listing repositories", e);
+            EventLog.e(TAG, "Error listing repositories", e);
             return createErrorResponse("Error listing repositories: " + e.getMessage());
         }
     }
 
+    /**
+     * Clean/dirty state of a workspace repository for the repository list
+     */
+    private String repositoryState(File repoDir) {
+        try (Repository repository = openRepository(repoDir.getAbsolutePath())) {
+            return WorkingTreeStatus.compute(repository).isClean() ? "clean" : "dirty";
+        } catch (Exception e) {
+            EventLog.w(TAG, "Could not determine state of {}: {}", repoDir.getName(), e);
+            return "unknown";
+        }
+    }
+
     /**
      * Clone a git repository from URL to workspace
+     * Remote repositories borrow objects from the workspace shared object store,
+     * so further clones of the same project only download missing objects
      * @param url The repository URL
      * @param targetName Optional target directory name
      * @param githubToken Optional GitHub token for private repositories
+     * @param shared Whether to use the shared object store for remote URLs
      */
-    private String cloneRepository(String url, String targetName, String githubToken) {
+    private String cloneRepository(String url, String targetName, String githubToken, boolean shared,
+                                   List<String> sparsePatterns) {
+        File targetDir = null;
         try {
             // Extract repository name from URL if target name not provided
             if (targetName == null || targetName.trim().isEmpty()) {
                 targetName = extractRepoName(url);
             }
 
-            File workspaceDir = new File(DEFAULT_WORKSPACE_PATH);
+            File workspaceDir = new File(workspacePath);
             if (!workspaceDir.exists()) {
                 workspaceDir.mkdirs();
             }
 
-            File targetDir = new File(workspaceDir, targetName);
+            targetDir = new File(workspaceDir, targetName);
             if (targetDir.exists()) {
                 return createErrorResponse("Repository directory already exists: " + targetName);
             }
 
-            Log.i(TAG, "Cloning repository from " + url + " to " + targetDir.getAbsolutePath());
+            EventLog.i(TAG, "Cloning repository from {} to {}", url, targetDir.getAbsolutePath());
             
-            // Build clone command
+            UsernamePasswordCredentialsProvider credentials = null;
+            // Add credentials if GitHub token is provided
+            if (githubToken != null && !githubToken.trim().isEmpty()) {
+                EventLog.i(TAG, "Using provided GitHub token for authentication");
+                credentials = new UsernamePasswordCredentialsProvider("x-access-token", githubToken);
+            }
+
+            String sparseLine = sparsePatterns.isEmpty() ? "" : "\nSPARSE_PATTERNS:" + sparsePatterns.size();
+            if (shared && SharedObjectStore.isShareable(url)) {
+                String storeKey = new SharedObjectStore(workspaceDir).cloneWithAlternates(url, targetDir, credentials,
+                    sparsePatterns);
+                return createSuccessResponse("CLONE_SUCCESS:" + targetDir.getAbsolutePath() + "\nSHARED_STORE:" + storeKey
+                    + sparseLine);
+            }
+
+            // Build clone command; sparse clones check out only matching paths after the fetch
             org.eclipse.jgit.api.CloneCommand cloneCommand = Git.cloneRepository()
                 .setURI(url)
-                .setDirectory(targetDir);
+                .setDirectory(targetDir)
+                .setNoCheckout(!sparsePatterns.isEmpty());
             
-            // Add credentials if GitHub token is provided
-            if (githubToken != null && !githubToken.trim().isEmpty()) {
-                Log.i(TAG, "Using provided GitHub token for authentication");
-                cloneCommand.setCredentialsProvider(
-                    new UsernamePasswordCredentialsProvider("x-access-token", githubToken)
-                );
+            if (credentials != null) {
+                cloneCommand.setCredentialsProvider(credentials);
             }
             
-            cloneCommand.call();
+            try (Git git = cloneCommand.call()) {
+                if (!sparsePatterns.isEmpty()) {
+                    SparseCheckout.configure(git.getRepository(), sparsePatterns);
+                    if (git.getRepository().resolve(Constants.HEAD) != null) {
+                        ParallelCheckout.hardReset(git, Constants.HEAD);
+                    }
+                }
+            }
 
-            return createSuccessResponse("CLONE_SUCCESS:" + targetDir.getAbsolutePath());
+            return createSuccessResponse("CLONE_SUCCESS:" + targetDir.getAbsolutePath() + sparseLine);
         } catch (Exception e) {
-            Log.e(TAG, "Error cloning repository", e);
+            EventLog.e(TAG, "Error cloning repository", e);
+            // Do not leave a half-initialized repository behind in the workspace
+            if (targetDir != null && new File(targetDir, ".git").exists()) {
+                deleteRecursively(targetDir);
+            }
             return createErrorResponse("CLONE_FAILED\n" + e.getMessage());
         }
     }
 
+    /**
+     * Garbage-collect the workspace shared object store
+     * Objects reachable from any dependent clone are kept
+     */
+    private String sharedStoreGc() {
+        try {
+            String stats = new SharedObjectStore(new File(workspacePath)).collectGarbage();
+            return createSuccessResponse("SHARED_STORE_GC_BEGIN\n" + stats + "SHARED_STORE_GC_END");
+        } catch (Exception e) {
+            EventLog.e(TAG, "Error collecting shared object store", e);
+            return createErrorResponse("SHARED_STORE_GC_FAILED\n" + e.getMessage());
+        }
+    }
+
     /**
      * Extract repository name from git URL
      */
@@ -514,14 +814,16 @@ public class GitBridge {
 
     /**
      * List GitHub repositories using personal access token
+     * @param token The GitHub token
+     * @param page 1-based page of up to 100 repositories
      */
-    private String listGitHubRepositories(String token) {
+    private String listGitHubRepositories(String token, int page) {
         try {
             StringBuilder output = new StringBuilder();
             output.append("GITHUB_REPOS_BEGIN\n");
 
             // GitHub API endpoint for user repositories
-            URL url = new URL("https://api.github.com/user/repos?per_page=100&sort=updated");
+            URL url = new URL("https://api.github.com/user/repos?per_page=100&sort=updated&page=" + Math.max(1, page));
             HttpURLConnection conn = (HttpURLConnection) url.openConnection();
             conn.setRequestMethod("GET");
             conn.setRequestProperty("Authorization", "token " + token);
@@ -563,10 +865,13 @@ public class GitBridge {
                 return createErrorResponse("GitHub API error: HTTP " + responseCode);
             }
 
+            // GitHub announces further pages through the Link header
+            String link = conn.getHeaderField("Link");
+            output.append("GITHUB_REPOS_MORE:").append(link != null && link.contains("rel=\"next\"")).append("\n");
             output.append("GITHUB_REPOS_END");
             return createSuccessResponse(output.toString());
         } catch (Exception e) {
-            Log.e(TAG, "Error listing GitHub repositories", e);
+            EventLog.e(TAG, "Error listing GitHub repositories", e);
             return createErrorResponse("Error connecting to GitHub: " + e.getMessage());
         }
     }
@@ -606,18 +911,18 @@ public class GitBridge {
                     JSONObject user = new JSONObject(response.toString());
                     String username = user.optString("login", "unknown");
                     
-                    Log.i(TAG, "✓ GitHub token is valid for user: " + username);
+                    EventLog.i(TAG, "✓ GitHub token is valid for user: {}", username);
                     return createSuccessResponse("TOKEN_VALID\nUSERNAME:" + username);
                 }
             } else if (responseCode == 401) {
-                Log.w(TAG, "Invalid GitHub token");
+                EventLog.w(TAG, "Invalid GitHub token");
                 return createErrorResponse("TOKEN_INVALID\nThe provided GitHub token is invalid or expired");
             } else {
-                Log.w(TAG, "GitHub API error during token validation: HTTP " + responseCode);
+                EventLog.w(TAG, "GitHub API error during token validation: HTTP {}", responseCode);
                 return createErrorResponse("TOKEN_VALIDATION_FAILED\nGitHub API error: HTTP " + responseCode);
             }
         } catch (Exception e) {
-            Log.e(TAG, "Error validating GitHub token", e);
+            EventLog.e(TAG, "Error validating GitHub token", e);
             return createErrorResponse("TOKEN_VALIDATION_ERROR\n" + e.getMessage());
         }
     }
@@ -640,12 +945,12 @@ public class GitBridge {
             
             // Security: Resolve canonical path to prevent directory traversal
             String canonicalPath = repoDir.getCanonicalPath();
-            File workspaceDir = new File(DEFAULT_WORKSPACE_PATH);
+            File workspaceDir = new File(workspacePath);
             String workspaceCanonicalPath = workspaceDir.getCanonicalPath();
             
             // Verify the repository is within the workspace to prevent deleting arbitrary files
             if (!canonicalPath.startsWith(workspaceCanonicalPath)) {
-                Log.w(TAG, "Attempted to delete repository outside workspace: " + canonicalPath);
+                EventLog.w(TAG, "Attempted to delete repository outside workspace: {}", canonicalPath);
                 return createErrorResponse("Security: Can only delete repositories within workspace");
             }
             
@@ -655,7 +960,15 @@ public class GitBridge {
                 return createErrorResponse("Not a git repository: " + path);
             }
             
-            Log.i(TAG, "Deleting repository: " + canonicalPath);
+            EventLog.i(TAG, "Deleting repository: {}", canonicalPath);
+            WorkingTreeStatus.invalidate(repoDir);
+            timelinePager.release(path);
+            prefetchScheduler.forget(path);
+            fileHistory.forget(path);
+            Repository warm = StartupPipeline.takeWarmRepository(new File(repoDir, ".git"));
+            if (warm != null) {
+                warm.close();
+            }
             
             // Delete the repository recursively
             if (deleteRecursively(repoDir)) {
@@ -664,7 +977,7 @@ public class GitBridge {
                 return createErrorResponse("Failed to delete repository: " + path);
             }
         } catch (Exception e) {
-            Log.e(TAG, "Error cleaning up repository", e);
+            EventLog.e(TAG, "Error cleaning up repository", e);
             return createErrorResponse("Error deleting repository: " + e.getMessage());
         }
     }
@@ -686,6 +999,29 @@ public class GitBridge {
         return file.delete();
     }
 
+    /**
+     * Export the event log next to the workspace and return its most recent part
+     */
+    private String dumpLogs() {
+        StringBuilder output = new StringBuilder();
+        File exportDir = new File(new File(workspacePath).getParentFile(), "logs");
+        String name = "gitutil-events-" + new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.US).format(new Date()) + ".log";
+        try {
+            File exported = EventLog.export(exportDir, name);
+            if (exported != null) {
+                output.append("LOG_EXPORT:").append(exported.getAbsolutePath()).append("\n");
+            }
+        } catch (Exception e) {
+            // Storage permission may be missing; the log content is still returned
+            EventLog.w(TAG, "Could not export event log: {}", e);
+            output.append("LOG_EXPORT_FAILED:").append(e.getMessage()).append("\n");
+        }
+        output.append("LOGS_BEGIN\n");
+        output.append(EventLog.dump());
+        output.append("LOGS_END");
+        return createSuccessResponse(output.toString());
+    }
+
     private String createSuccessResponse(String output) {
         try {
             JSONObject response = new JSONObject();
@@ -695,7 +1031,7 @@ public class GitBridge {
             response.put("exit_code", 0);
             return response.toString();
         } catch (Exception e) {
-            Log.e(TAG, "Error creating success response", e);
+            EventLog.e(TAG, "Error creating success response", e);
             return "{\"success\":false,\"output\":\"\",\"errors\":\"" + e.getMessage() + "\",\"exit_code\":1}";
         }
     }
@@ -713,7 +1049,7 @@ public class GitBridge {
             response.put("exit_code", 1);
             return response.toString();
         } catch (Exception e) {
-            Log.e(TAG, "Error creating error response", e);
+            EventLog.e(TAG, "Error creating error response", e);
             return "{\"success\":false,\"output\":\"\",\"errors\":\"" + e.getMessage() + "\",\"exit_code\":1}";
         }
     }
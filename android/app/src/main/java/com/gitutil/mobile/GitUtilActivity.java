@@ -34,6 +34,10 @@ public class GitUtilActivity extends AppCompatActivity {
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         
+        // No-op when MainActivity already started the warm-up
+        StartupPipeline.begin(this);
+        StartupPipeline.setInteractiveListener(() -> runOnUiThread(this::reportFullyDrawn));
+        
         // Check and request storage permissions based on Android version
         if (!hasStoragePermission()) {
             requestStoragePermission();
@@ -103,6 +107,13 @@ public class GitUtilActivity extends AppCompatActivity {
         }
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        // Drop the reference to this activity held by the startup listener
+        StartupPipeline.setInteractiveListener(null);
+    }
+
     private void showPermissionDeniedDialog() {
         waitingForPermissionFromSettings = true;
         
@@ -140,8 +151,8 @@ public class GitUtilActivity extends AppCompatActivity {
     }
 
     private void initializeWebView() {
-        // Create WebView
-        webView = new WebView(this);
+        // Use the WebView prewarmed by MainActivity when available
+        webView = StartupPipeline.obtainWebView(this);
         setContentView(webView);
 
         // Enable hardware acceleration for smooth CSS animations (e.g., loading spinner)
@@ -14,7 +14,10 @@ public class MainActivity extends AppCompatActivity {
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        // Warm up JGit and the WebView while the launcher screen is shown
+        StartupPipeline.begin(this);
         setContentView(R.layout.activity_main);
+        StartupPipeline.prewarmWebView(this);
 
         Button launchAppButton = findViewById(R.id.launchAppButton);
 
@@ -0,0 +1,440 @@
+package com.gitutil.mobile;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.ResetCommand;
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheBuilder;
+import org.eclipse.jgit.dircache.DirCacheCheckout.CheckoutMetadata;
+import org.eclipse.jgit.dircache.Checkout;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.dircache.DirCacheIterator;
+import org.eclipse.jgit.lib.ConfigConstants;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.CoreConfig;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.TreeWalk.OperationType;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Parallel checkout for large hard resets
+ *
+ * JGit's DirCacheCheckout inflates and writes one file at a time, which is
+ * slow on FUSE-backed external storage. This engine diffs the index against
+ * the target tree first, applies deletes and directory creation in batches,
+ * inflates and writes blobs on a worker pool (one ObjectReader per task) and
+ * writes the new DirCache once at the end. Small resets, and trees that need
+ * content filters, line-ending conversion or symlinks, use JGit's reset.
+ *
+ * Repositories with sparse checkout patterns always use this engine: paths
+ * outside the patterns keep their index entry, flagged assume-valid so JGit
+ * and desktop git treat the absent file as unchanged, but are not written,
+ * and files that need filters are written through JGit's Checkout instead.
+ */
+final class ParallelCheckout {
+    private static final String TAG = "ParallelCheckout";
+
+    // Below this many file writes/deletes the single-threaded JGit reset is fast enough
+    static final int MIN_PARALLEL_CHANGES = 256;
+
+    // Files written per worker task; batches amortize ObjectReader creation
+    private static final int WRITE_BATCH_SIZE = 64;
+
+    private static final ExecutorService WRITE_POOL = Executors.newFixedThreadPool(
+        Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors())),
+        runnable -> {
+            Thread thread = new Thread(runnable, "checkout-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+    private ParallelCheckout() {
+    }
+
+    /**
+     * Hard reset the current branch to {@code revision}
+     * Throws on failure exactly like {@code git.reset().setMode(HARD)} would
+     */
+    static void hardReset(Git git, String revision) throws Exception {
+        Repository repository = git.getRepository();
+        ObjectId target = repository.resolve(revision);
+        if (repository.isBare()) {
+            resetWithJGit(git, revision);
+            return;
+        }
+        try {
+            SparseCheckout sparse = SparseCheckout.load(repository);
+            // Small resets are decided from the index alone, before paying for a working tree scan
+            boolean large = target != null
+                && (sparse != null || countChanges(repository, target, MIN_PARALLEL_CHANGES) >= MIN_PARALLEL_CHANGES);
+            Plan plan = large ? plan(repository, target, sparse) : null;
+
+            if (plan == null) {
+                resetWithJGit(git, revision);
+            } else {
+                EventLog.i(TAG, "Parallel checkout: {} write(s), {} delete(s), {} outside sparse patterns",
+                    plan.writes.size(), plan.deletes.size(), plan.skipped);
+                long started = System.currentTimeMillis();
+                apply(repository, plan, revision);
+                EventLog.i(TAG, "Parallel checkout finished in {}ms", System.currentTimeMillis() - started);
+            }
+        } finally {
+            WorkingTreeStatus.invalidate(repository.getWorkTree());
+        }
+    }
+
+    private static void resetWithJGit(Git git, String revision) throws Exception {
+        git.reset()
+            .setMode(ResetCommand.ResetType.HARD)
+            .setRef(revision)
+            .call();
+    }
+
+    /**
+     * Count paths whose index entry differs from the target tree, stopping at {@code limit}
+     */
+    private static int countChanges(Repository repository, ObjectId target, int limit) throws IOException {
+        DirCache dirCache = repository.readDirCache();
+        try (RevWalk revWalk = new RevWalk(repository);
+             TreeWalk treeWalk = new TreeWalk(repository)) {
+            treeWalk.setRecursive(true);
+            treeWalk.setFilter(TreeFilter.ANY_DIFF);
+            treeWalk.addTree(new DirCacheIterator(dirCache));
+            treeWalk.addTree(revWalk.parseCommit(target).getTree());
+            int count = 0;
+            while (count < limit && treeWalk.next()) {
+                count++;
+            }
+            return count;
+        }
+    }
+
+    /**
+     * A file to write; {@code metadata} is set when it needs JGit's filtered checkout
+     */
+    private static final class Write {
+        final DirCacheEntry entry;
+        final CheckoutMetadata metadata;
+
+        Write(DirCacheEntry entry, CheckoutMetadata metadata) {
+            this.entry = entry;
+            this.metadata = metadata;
+        }
+    }
+
+    /**
+     * Files to write and delete, plus the complete new index content
+     */
+    private static final class Plan {
+        final RevCommit commit;
+        final List<DirCacheEntry> entries = new ArrayList<>();
+        final List<Write> writes = new ArrayList<>();
+        final List<String> deletes = new ArrayList<>();
+        // Index entries outside the sparse checkout patterns
+        int skipped;
+
+        Plan(RevCommit commit) {
+            this.commit = commit;
+        }
+    }
+
+    /**
+     * Diff the current index against the target tree
+     * @param sparse the sparse checkout patterns, or null to check out every path
+     * @return the plan, or null when the tree needs features only JGit's checkout handles
+     */
+    private static Plan plan(Repository repository, ObjectId target, SparseCheckout sparse) throws IOException {
+        CoreConfig.AutoCRLF autoCrlf = repository.getConfig().getEnum(ConfigConstants.CONFIG_CORE_SECTION, null,
+            ConfigConstants.CONFIG_KEY_AUTOCRLF, CoreConfig.AutoCRLF.FALSE);
+        if (autoCrlf != CoreConfig.AutoCRLF.FALSE && sparse == null) {
+            return null;
+        }
+
+        // Files the working tree changed behind the index also have to be restored; the
+        // cached status may predate edits its watches have not reported yet, so scan afresh
+        Set<String> dirty = new HashSet<>();
+        WorkingTreeStatus.invalidate(repository.getWorkTree());
+        WorkingTreeStatus.Result status = WorkingTreeStatus.compute(repository);
+        dirty.addAll(status.modified);
+        dirty.addAll(status.missing);
+
+        DirCache dirCache = repository.readDirCache();
+        try (RevWalk revWalk = new RevWalk(repository);
+             TreeWalk treeWalk = new TreeWalk(repository)) {
+            Plan plan = new Plan(revWalk.parseCommit(target));
+            treeWalk.setRecursive(true);
+            treeWalk.setOperationType(OperationType.CHECKOUT_OP);
+            treeWalk.addTree(new DirCacheIterator(dirCache));
+            treeWalk.addTree(plan.commit.getTree());
+
+            while (treeWalk.next()) {
+                String path = treeWalk.getPathString();
+                boolean attributesFile = path.equals(Constants.DOT_GIT_ATTRIBUTES)
+                    || path.endsWith("/" + Constants.DOT_GIT_ATTRIBUTES);
+                if (attributesFile && sparse == null) {
+                    // Attributes may request filters or eol conversion
+                    return null;
+                }
+                FileMode indexMode = treeWalk.getFileMode(0);
+                FileMode targetMode = treeWalk.getFileMode(1);
+                DirCacheIterator indexIterator = treeWalk.getTree(0, DirCacheIterator.class);
+                boolean checkedOut = indexIterator != null
+                    && (sparse == null || isCheckedOut(indexIterator.getDirCacheEntry()));
+                if (targetMode == FileMode.MISSING) {
+                    if (checkedOut) {
+                        plan.deletes.add(path);
+                    }
+                    continue;
+                }
+
+                DirCacheEntry entry = new DirCacheEntry(path);
+                entry.setFileMode(targetMode);
+                entry.setObjectId(treeWalk.getObjectId(1));
+                if (sparse != null && !sparse.includes(path)) {
+                    // Tracked in the index as assume-valid, so git status and git add -A do not see
+                    // a deletion; removed from the work tree if an earlier checkout wrote it
+                    entry.setAssumeValid(true);
+                    if (checkedOut) {
+                        plan.deletes.add(path);
+                    }
+                    plan.skipped++;
+                    plan.entries.add(entry);
+                    continue;
+                }
+                if (sparse == null) {
+                    if (targetMode != FileMode.REGULAR_FILE && targetMode != FileMode.EXECUTABLE_FILE) {
+                        return null;
+                    }
+                    if (indexMode != FileMode.MISSING && indexMode != FileMode.REGULAR_FILE
+                            && indexMode != FileMode.EXECUTABLE_FILE) {
+                        return null;
+                    }
+                }
+
+                if (checkedOut && indexMode == FileMode.SYMLINK && targetMode != FileMode.SYMLINK) {
+                    // Writing through the old link would change its target instead
+                    plan.deletes.add(path);
+                }
+
+                boolean unchanged = checkedOut
+                    && indexMode == targetMode
+                    && treeWalk.idEqual(0, 1)
+                    && !dirty.contains(path);
+                if (unchanged) {
+                    // Keep the stat data so the next status check does not read the file
+                    entry.copyMetaData(indexIterator.getDirCacheEntry());
+                } else {
+                    plan.writes.add(new Write(entry, sparse != null ? checkoutMetadata(treeWalk, targetMode) : null));
+                }
+                plan.entries.add(entry);
+            }
+            return plan;
+        }
+    }
+
+    /**
+     * Whether an index entry was written to the work tree; entries outside the
+     * sparse checkout patterns are flagged assume-valid
+     */
+    private static boolean isCheckedOut(DirCacheEntry entry) {
+        return !entry.isAssumeValid();
+    }
+
+    /**
+     * Filters and line-ending conversion for the target tree's version of the current path
+     * @return null when the blob can be copied as is
+     */
+    private static CheckoutMetadata checkoutMetadata(TreeWalk treeWalk, FileMode mode) throws IOException {
+        CoreConfig.EolStreamType eol = treeWalk.getCheckoutEolStreamType(1);
+        String smudge = treeWalk.getSmudgeCommand(treeWalk.getAttributes(1));
+        boolean plainFile = mode == FileMode.REGULAR_FILE || mode == FileMode.EXECUTABLE_FILE;
+        if (plainFile && smudge == null && (eol == null || eol == CoreConfig.EolStreamType.DIRECT)) {
+            return null;
+        }
+        return new CheckoutMetadata(eol, smudge);
+    }
+
+    private static void apply(Repository repository, Plan plan, String revision) throws Exception {
+        File workTree = repository.getWorkTree();
+        DirCache dirCache = repository.lockDirCache();
+        try {
+            // Deletes first, so files can become directories and vice versa
+            Set<File> touchedDirs = new TreeSet<>();
+            for (String path : plan.deletes) {
+                File file = new File(workTree, path);
+                boolean present = file.exists() || Files.isSymbolicLink(file.toPath());
+                if (present && !deleteRecursively(file)) {
+                    throw new IOException("Could not delete " + path);
+                }
+                touchedDirs.add(file.getParentFile());
+            }
+            removeEmptyDirectories(touchedDirs, workTree);
+
+            // Create every needed parent directory once, shortest paths first
+            Set<File> parents = new TreeSet<>();
+            for (Write write : plan.writes) {
+                parents.add(new File(workTree, write.entry.getPathString()).getParentFile());
+            }
+            for (File parent : parents) {
+                if (parent.isFile() && !parent.delete()) {
+                    throw new IOException("Could not replace file " + parent + " with a directory");
+                }
+                if (!parent.isDirectory() && !parent.mkdirs()) {
+                    throw new IOException("Could not create directory " + parent);
+                }
+            }
+
+            writeFiles(repository, workTree, plan.writes);
+            // HEAD only moves once the working tree holds the target content
+            moveHead(repository, plan.commit, revision);
+
+            DirCacheBuilder builder = dirCache.builder();
+            for (DirCacheEntry entry : plan.entries) {
+                builder.add(entry);
+            }
+            builder.finish();
+            dirCache.write();
+            if (!dirCache.commit()) {
+                throw new IOException("Could not write the index");
+            }
+        } finally {
+            dirCache.unlock();
+        }
+    }
+
+    /**
+     * Point HEAD (and the branch it refers to) at the target commit, as ResetCommand does
+     */
+    private static void moveHead(Repository repository, RevCommit commit, String revision) throws IOException {
+        ObjectId previous = repository.resolve(Constants.HEAD);
+        RefUpdate update = repository.updateRef(Constants.HEAD);
+        update.setNewObjectId(commit);
+        update.setRefLogMessage("reset: moving to " + revision, false);
+        RefUpdate.Result result = update.forceUpdate();
+        switch (result) {
+            case NEW:
+            case FORCED:
+            case FAST_FORWARD:
+            case NO_CHANGE:
+                break;
+            default:
+                throw new IOException("Could not move HEAD to " + revision + ": " + result);
+        }
+        if (previous != null) {
+            repository.writeOrigHead(previous);
+        }
+    }
+
+    /**
+     * Inflate and write blobs on the worker pool, then record the new stat data
+     */
+    private static void writeFiles(Repository repository, File workTree, List<Write> writes) throws Exception {
+        List<Future<?>> futures = new ArrayList<>();
+        for (int start = 0; start < writes.size(); start += WRITE_BATCH_SIZE) {
+            final List<Write> batch = writes.subList(start, Math.min(writes.size(), start + WRITE_BATCH_SIZE));
+            futures.add(WRITE_POOL.submit(() -> {
+                Checkout checkout = null;
+                try (ObjectReader reader = repository.newObjectReader()) {
+                    for (Write write : batch) {
+                        if (write.metadata == null) {
+                            writeFile(reader, workTree, write.entry);
+                            continue;
+                        }
+                        if (checkout == null) {
+                            checkout = new Checkout(repository);
+                        }
+                        if (write.entry.getFileMode() == FileMode.GITLINK) {
+                            checkout.checkoutGitlink(write.entry, null);
+                        } else {
+                            checkout.checkout(write.entry, write.metadata, reader, null);
+                        }
+                    }
+                }
+                return null;
+            }));
+        }
+
+        Exception failure = null;
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (Exception e) {
+                if (failure == null) {
+                    failure = e;
+                    for (Future<?> other : futures) {
+                        other.cancel(false);
+                    }
+                }
+            }
+        }
+        if (failure != null) {
+            Throwable cause = failure.getCause() != null ? failure.getCause() : failure;
+            throw new IOException("Parallel checkout failed: " + cause.getMessage(), cause);
+        }
+    }
+
+    private static void writeFile(ObjectReader reader, File workTree, DirCacheEntry entry) throws IOException {
+        File file = new File(workTree, entry.getPathString());
+        if (file.isDirectory() && !deleteRecursively(file)) {
+            throw new IOException("Could not replace directory " + file + " with a file");
+        }
+        try (OutputStream out = new FileOutputStream(file)) {
+            // Streams large blobs instead of inflating them into memory
+            reader.open(entry.getObjectId(), Constants.OBJ_BLOB).copyTo(out);
+        }
+        boolean executable = entry.getFileMode() == FileMode.EXECUTABLE_FILE;
+        if (executable != file.canExecute()) {
+            file.setExecutable(executable);
+        }
+        entry.setLength(file.length());
+        entry.setLastModified(Instant.ofEpochMilli(file.lastModified()));
+    }
+
+    private static void removeEmptyDirectories(Set<File> dirs, File workTree) {
+        for (File dir : dirs) {
+            File current = dir;
+            while (current != null && !current.equals(workTree)) {
+                String[] children = current.list();
+                if (children == null || children.length > 0 || !current.delete()) {
+                    break;
+                }
+                current = current.getParentFile();
+            }
+        }
+    }
+
+    private static boolean deleteRecursively(File file) {
+        if (file.isDirectory() && !Files.isSymbolicLink(file.toPath())) {
+            File[] children = file.listFiles();
+            if (children != null) {
+                for (File child : children) {
+                    if (!deleteRecursively(child)) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return file.delete();
+    }
+}
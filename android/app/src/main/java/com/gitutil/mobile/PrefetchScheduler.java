@@ -0,0 +1,298 @@
+package com.gitutil.mobile;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Predictive timeline prefetch
+ *
+ * Tracks how often and how recently each repository is opened (a decayed
+ * "frecency" score persisted in the workspace). When the workspace list is
+ * shown, the first timeline page of the top candidates is loaded on a
+ * background-priority thread, which also leaves their TimelinePager sessions
+ * open. Opening one of them then returns the prefetched page immediately.
+ * Work that has not started is cancelled when the user navigates elsewhere.
+ */
+final class PrefetchScheduler {
+    private static final String TAG = "PrefetchScheduler";
+
+    private static final String STATS_PATH = ".gitutil/prefetch-stats";
+
+    // Opens older than this count half as much as an open today
+    private static final long HALF_LIFE_MS = 7L * 24 * 60 * 60 * 1000;
+
+    // Repositories never opened are not worth warming
+    private static final double MIN_SCORE = 0.25;
+
+    private static final ExecutorService WORKER = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(() -> {
+            android.os.Process.setThreadPriority(android.os.Process.THREAD_PRIORITY_BACKGROUND);
+            runnable.run();
+        }, "timeline-prefetch");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Decayed open count of one repository
+     */
+    private static final class Usage {
+        double score;
+        long lastOpened;
+
+        double scoreAt(long now) {
+            return score * Math.pow(0.5, (double) Math.max(0, now - lastOpened) / HALF_LIFE_MS);
+        }
+    }
+
+    /**
+     * A prefetched first page and the walk position it leaves the pager at
+     */
+    private static final class Page {
+        final int limit;
+        final String output;
+        final int count;
+        final boolean more;
+
+        Page(int limit, String output, int count, boolean more) {
+            this.limit = limit;
+            this.output = output;
+            this.count = count;
+            this.more = more;
+        }
+    }
+
+    /**
+     * A scheduled prefetch; exactly one of the worker and take() claims it
+     */
+    private static final class Prefetch {
+        final AtomicBoolean claimed = new AtomicBoolean();
+        Future<Page> future;
+    }
+
+    private final TimelinePager pager;
+    private final File statsFile;
+    private final Map<String, Usage> usage = new HashMap<>();
+    private final Map<String, Prefetch> pending = new HashMap<>();
+    private boolean loaded;
+
+    PrefetchScheduler(TimelinePager pager, String workspacePath) {
+        this.pager = pager;
+        this.statsFile = new File(workspacePath, STATS_PATH);
+    }
+
+    /**
+     * Record that the user opened a repository
+     */
+    synchronized void recordOpen(String path) {
+        loadStats();
+        long now = System.currentTimeMillis();
+        Usage entry = usage.get(path);
+        if (entry == null) {
+            entry = new Usage();
+            usage.put(path, entry);
+        }
+        entry.score = entry.scoreAt(now) + 1;
+        entry.lastOpened = now;
+        final List<String> lines = statsLines();
+        WORKER.submit(() -> saveStats(lines));
+    }
+
+    /**
+     * Prefetch the first timeline page of the most likely repositories among {@code candidates}
+     * Replaces any earlier schedule
+     */
+    synchronized void schedule(List<String> candidates, int pageSize) {
+        loadStats();
+        cancel();
+
+        StorageProfile profile = StorageProfile.ensureInstalled();
+        int maxRepositories = maxRepositories(profile);
+
+        final long now = System.currentTimeMillis();
+        List<String> ranked = new ArrayList<>();
+        for (String path : candidates) {
+            Usage entry = usage.get(path);
+            if (entry != null && entry.scoreAt(now) >= MIN_SCORE) {
+                ranked.add(path);
+            }
+        }
+        Collections.sort(ranked, (a, b) -> Double.compare(usage.get(b).scoreAt(now), usage.get(a).scoreAt(now)));
+
+        for (String path : ranked.subList(0, Math.min(maxRepositories, ranked.size()))) {
+            final Prefetch prefetch = new Prefetch();
+            prefetch.future = WORKER.submit(() -> {
+                if (!prefetch.claimed.compareAndSet(false, true)) {
+                    // The user opened the repository first and it was loaded normally
+                    return null;
+                }
+                StringBuilder output = new StringBuilder();
+                pager.page(path, 0, pageSize, output);
+                return new Page(pageSize, output.toString(), countSnapshots(output),
+                    output.indexOf("TIMELINE_MORE:true") >= 0);
+            });
+            pending.put(path, prefetch);
+        }
+        EventLog.i(TAG, "Scheduled prefetch of {} of {} repositories", pending.size(), candidates.size());
+    }
+
+    /**
+     * Hand out the prefetched first page of {@code path}, if it is still current
+     * Prefetches of other repositories that have not started are cancelled
+     * @return the page output, or null to load it normally
+     */
+    String take(String path, int limit) {
+        Prefetch prefetch;
+        synchronized (this) {
+            prefetch = pending.remove(path);
+            for (Prefetch other : pending.values()) {
+                // Finished pages stay available in case the user comes back to the list
+                other.future.cancel(false);
+            }
+        }
+        if (prefetch == null || prefetch.claimed.compareAndSet(false, true)) {
+            // Still queued: load the page on the caller's thread instead of waiting for the worker
+            if (prefetch != null) {
+                prefetch.future.cancel(false);
+            }
+            return null;
+        }
+        if (prefetch.future.isCancelled()) {
+            return null;
+        }
+        try {
+            // Running or done: its walk is the one the next page continues
+            Page page = prefetch.future.get();
+            // The page is only valid while the pager walk it came from continues at its end;
+            // single-page histories release their walk and are cheap to load again
+            if (page == null || page.limit != limit || !page.more || !pager.canContinue(path, page.count)) {
+                return null;
+            }
+            EventLog.i(TAG, "Served prefetched timeline for {}", path);
+            return page.output;
+        } catch (Exception e) {
+            EventLog.w(TAG, "Prefetch of {} failed: {}", path, e);
+            return null;
+        }
+    }
+
+    /**
+     * Cancel prefetches that have not started and drop finished pages
+     */
+    synchronized void cancel() {
+        Iterator<Prefetch> iterator = pending.values().iterator();
+        while (iterator.hasNext()) {
+            iterator.next().future.cancel(false);
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Forget a repository, e.g. after it was deleted
+     */
+    synchronized void forget(String path) {
+        Prefetch prefetch = pending.remove(path);
+        if (prefetch != null) {
+            prefetch.future.cancel(false);
+        }
+        if (usage.remove(path) != null) {
+            final List<String> lines = statsLines();
+            WORKER.submit(() -> saveStats(lines));
+        }
+    }
+
+    /**
+     * Repositories prefetched at once
+     * This is the memory bound: each prefetch keeps an open Repository and a RevWalk with its
+     * parsed commits alive in a TimelinePager session, which dwarfs the page text. Staying
+     * below TimelinePager.MAX_SESSIONS also leaves room for the repository the user has open.
+     */
+    private static int maxRepositories(StorageProfile profile) {
+        switch (profile.tier) {
+            case LOW:
+                return 1;
+            case HIGH:
+                return 3;
+            default:
+                return 2;
+        }
+    }
+
+    private static int countSnapshots(StringBuilder output) {
+        int count = 0;
+        for (int index = output.indexOf("SNAPSHOT_BEGIN"); index >= 0; index = output.indexOf("SNAPSHOT_BEGIN", index + 1)) {
+            count++;
+        }
+        return count;
+    }
+
+    private void loadStats() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        if (!statsFile.isFile()) {
+            return;
+        }
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(statsFile), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // <score>\t<last opened millis>\t<path>
+                String[] fields = line.split("\t", 3);
+                if (fields.length == 3) {
+                    Usage entry = new Usage();
+                    entry.score = Double.parseDouble(fields[0]);
+                    entry.lastOpened = Long.parseLong(fields[1]);
+                    usage.put(fields[2], entry);
+                }
+            }
+        } catch (Exception e) {
+            EventLog.w(TAG, "Could not read prefetch statistics: {}", e);
+        }
+    }
+
+    private List<String> statsLines() {
+        List<String> lines = new ArrayList<>();
+        for (Map.Entry<String, Usage> entry : usage.entrySet()) {
+            lines.add(entry.getValue().score + "\t" + entry.getValue().lastOpened + "\t" + entry.getKey());
+        }
+        return lines;
+    }
+
+    private void saveStats(List<String> lines) {
+        File parent = statsFile.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            return;
+        }
+        File temp = new File(statsFile.getPath() + ".tmp");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8)) {
+            for (String line : lines) {
+                writer.write(line);
+                writer.write('\n');
+            }
+        } catch (Exception e) {
+            EventLog.w(TAG, "Could not write prefetch statistics: {}", e);
+            return;
+        }
+        if (!temp.renameTo(statsFile)) {
+            EventLog.w(TAG, "Could not replace prefetch statistics");
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.gitutil.mobile;
+
+import org.eclipse.jgit.lib.BatchRefUpdate;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.RefDatabase;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevObject;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.transport.ReceiveCommand;
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Ref listing and backup branch pruning
+ *
+ * Refs are enumerated with a single RefDatabase prefix scan, which reads the
+ * loose ref directory and packed-refs once. Only the refs on the requested
+ * page have their tip commit parsed, so listing stays cheap with tens of
+ * thousands of refs. Pruning deletes all selected backup branches in one
+ * atomic batch, which rewrites packed-refs a single time.
+ */
+final class RefLister {
+    private static final String TAG = "RefLister";
+
+    static final String BACKUP_PREFIX = Constants.R_HEADS + "backup/before-rollback-";
+
+    static final int DEFAULT_PAGE_SIZE = 200;
+    static final int MAX_PAGE_SIZE = 2000;
+
+    // Backup branches carry their creation time: backup/before-rollback-yyyyMMdd_HHmmss[_nanos]
+    private static final String BACKUP_TIMESTAMP_FORMAT = "yyyyMMdd_HHmmss";
+
+    private RefLister() {
+    }
+
+    /**
+     * Expand a user-supplied prefix: "refs/..." is used as is, anything else is a branch prefix
+     */
+    static String fullPrefix(String prefix) {
+        if (prefix == null || prefix.isEmpty()) {
+            return Constants.R_REFS;
+        }
+        return prefix.startsWith(Constants.R_REFS) ? prefix : Constants.R_HEADS + prefix;
+    }
+
+    /**
+     * Append one page of REF blocks followed by REFS_* paging markers
+     */
+    static void list(Repository repository, String prefix, int offset, int limit, StringBuilder output)
+            throws IOException {
+        limit = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        offset = Math.max(0, offset);
+        List<Ref> refs = scan(repository, fullPrefix(prefix));
+        int end = Math.min(refs.size(), offset + limit);
+
+        output.append("REFS_BEGIN\n");
+        try (RevWalk revWalk = new RevWalk(repository)) {
+            for (int i = offset; i < end; i++) {
+                Ref ref = refs.get(i);
+                output.append("REF_NAME:").append(ref.getName()).append("\n");
+                output.append("REF_SHORT:").append(Repository.shortenRefName(ref.getName())).append("\n");
+                ObjectId target = ref.getObjectId();
+                if (target != null) {
+                    output.append("REF_TARGET:").append(target.getName()).append("\n");
+                    RevCommit commit = tipCommit(revWalk, target);
+                    if (commit != null) {
+                        output.append("REF_WHEN:").append(commit.getCommitTime()).append("\n");
+                        output.append("REF_TITLE:").append(commit.getShortMessage()).append("\n");
+                    }
+                }
+                output.append("REF_SEPARATOR\n");
+            }
+        }
+        output.append("REFS_END\n");
+        output.append("REFS_TOTAL:").append(refs.size()).append("\n");
+        output.append("REFS_OFFSET:").append(offset).append("\n");
+        output.append("REFS_COUNT:").append(Math.max(0, end - offset)).append("\n");
+        output.append("REFS_MORE:").append(end < refs.size()).append("\n");
+    }
+
+    /**
+     * Delete backup/before-rollback-* branches older than {@code maxAgeDays}, always
+     * keeping the {@code keepLatest} most recent ones and the checked-out branch
+     */
+    static void pruneBackups(Repository repository, int maxAgeDays, int keepLatest, boolean dryRun,
+                             StringBuilder output) throws IOException {
+        List<Ref> backups = scan(repository, BACKUP_PREFIX);
+        // Newest first, so the first keepLatest entries are the ones kept
+        Collections.sort(backups, Comparator.comparing(Ref::getName).reversed());
+
+        String current = repository.getFullBranch();
+        long cutoff = System.currentTimeMillis() - maxAgeDays * 24L * 60 * 60 * 1000;
+        List<ReceiveCommand> deletes = new ArrayList<>();
+        for (int i = 0; i < backups.size(); i++) {
+            Ref ref = backups.get(i);
+            long created = backupTime(ref.getName());
+            if (i < keepLatest || ref.getName().equals(current) || created < 0 || created >= cutoff
+                    || ref.getObjectId() == null) {
+                continue;
+            }
+            deletes.add(new ReceiveCommand(ref.getObjectId(), ObjectId.zeroId(), ref.getName()));
+        }
+
+        if (!deletes.isEmpty() && !dryRun) {
+            RefDatabase refDatabase = repository.getRefDatabase();
+            BatchRefUpdate batch = refDatabase.newBatchUpdate();
+            // Atomic batches on a file ref database are applied with one packed-refs rewrite
+            batch.setAtomic(refDatabase.performsAtomicTransactions());
+            batch.setRefLogMessage("prune backup branches", false);
+            batch.addCommand(deletes);
+            try (RevWalk revWalk = new RevWalk(repository)) {
+                batch.execute(revWalk, NullProgressMonitor.INSTANCE);
+            }
+            for (ReceiveCommand command : deletes) {
+                if (command.getResult() != ReceiveCommand.Result.OK) {
+                    throw new IOException("Could not delete " + command.getRefName() + ": " + command.getResult()
+                        + (command.getMessage() != null ? " (" + command.getMessage() + ")" : ""));
+                }
+            }
+            EventLog.i(TAG, "Pruned {} backup branch(es)", deletes.size());
+        }
+
+        for (ReceiveCommand command : deletes) {
+            output.append("PRUNED_REF:").append(command.getRefName()).append("\n");
+        }
+        output.append("PRUNED:").append(deletes.size()).append("\n");
+        output.append("KEPT:").append(backups.size() - deletes.size()).append("\n");
+        output.append("DRY_RUN:").append(dryRun).append("\n");
+    }
+
+    private static List<Ref> scan(Repository repository, String prefix) throws IOException {
+        List<Ref> refs = new ArrayList<>(repository.getRefDatabase().getRefsByPrefix(prefix));
+        Collections.sort(refs, Comparator.comparing(Ref::getName));
+        return refs;
+    }
+
+    /**
+     * The commit a ref points to, peeling annotated tags
+     * @return null for refs to trees or blobs, or missing objects
+     */
+    private static RevCommit tipCommit(RevWalk revWalk, ObjectId target) {
+        try {
+            RevObject object = revWalk.peel(revWalk.parseAny(target));
+            if (object instanceof RevCommit) {
+                revWalk.parseBody(object);
+                return (RevCommit) object;
+            }
+        } catch (IOException e) {
+            EventLog.w(TAG, "Could not parse ref target {}: {}", target, e);
+        }
+        return null;
+    }
+
+    /**
+     * Creation time encoded in a backup branch name, or -1 if it has none
+     */
+    static long backupTime(String refName) {
+        if (!refName.startsWith(BACKUP_PREFIX)) {
+            return -1;
+        }
+        String stamp = refName.substring(BACKUP_PREFIX.length());
+        if (stamp.length() < BACKUP_TIMESTAMP_FORMAT.length()) {
+            return -1;
+        }
+        try {
+            SimpleDateFormat format = new SimpleDateFormat(BACKUP_TIMESTAMP_FORMAT, Locale.US);
+            format.setLenient(false);
+            return format.parse(stamp.substring(0, BACKUP_TIMESTAMP_FORMAT.length())).getTime();
+        } catch (ParseException e) {
+            return -1;
+        }
+    }
+}
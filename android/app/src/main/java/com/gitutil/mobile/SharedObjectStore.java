@@ -0,0 +1,389 @@
+package com.gitutil.mobile;
+
+import org.eclipse.jgit.api.FetchCommand;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheCheckout;
+import org.eclipse.jgit.lib.BatchRefUpdate;
+import org.eclipse.jgit.lib.ConfigConstants;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.eclipse.jgit.transport.CredentialsProvider;
+import org.eclipse.jgit.transport.FetchResult;
+import org.eclipse.jgit.transport.RefSpec;
+import org.eclipse.jgit.transport.ReceiveCommand;
+import org.eclipse.jgit.transport.RemoteConfig;
+import org.eclipse.jgit.transport.URIish;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Workspace-level shared object store for related clones
+ *
+ * Clones of the same upstream (including forks, which keep the repository
+ * name) borrow objects from one bare cache repository under
+ * {@code <workspace>/.gitutil/objects} through {@code objects/info/alternates}.
+ * Only objects missing from the cache are downloaded, and a second clone of
+ * the same repository only writes refs and the working tree.
+ *
+ * Every cache keeps the refs of each fork under {@code refs/shared/<fork>/}.
+ * Before garbage collection the refs of every dependent repository are
+ * fetched into {@code refs/dependents/}, so objects still used by any clone are
+ * never pruned.
+ */
+final class SharedObjectStore {
+    private static final String TAG = "SharedObjectStore";
+
+    private static final String STORE_PATH = ".gitutil/objects";
+    private static final String SHARED_REFS = "refs/shared/";
+    private static final String DEPENDENT_REFS = "refs/dependents/";
+
+    // One lock per cache: clones and garbage collection of the same cache never overlap
+    private static final Map<String, Object> LOCKS = new ConcurrentHashMap<>();
+
+    private final File workspace;
+
+    SharedObjectStore(File workspace) {
+        this.workspace = workspace;
+    }
+
+    /**
+     * Whether a URL refers to a remote that is worth caching (local paths are not)
+     */
+    static boolean isShareable(String url) {
+        try {
+            URIish uri = new URIish(url);
+            return uri.getHost() != null && !"file".equals(uri.getScheme());
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    /**
+     * Clone {@code url} into {@code targetDir} borrowing objects from the shared cache
+     * @param sparsePatterns sparse checkout patterns; empty to check out the whole tree
+     * @return the cache key used
+     */
+    String cloneWithAlternates(String url, File targetDir, CredentialsProvider credentials,
+                               List<String> sparsePatterns) throws Exception {
+        URIish uri = new URIish(url);
+        String key = storeKey(uri);
+        String fork = sanitize(uri.getPath());
+        File storeDir = new File(new File(workspace, STORE_PATH), key + ".git");
+
+        synchronized (lockFor(key)) {
+            FetchResult fetchResult;
+            try (Repository store = openStore(storeDir); Git storeGit = new Git(store)) {
+                EventLog.i(TAG, "Fetching {} into shared store {}", url, key);
+                FetchCommand fetch = storeGit.fetch()
+                    .setRemote(url)
+                    .setRefSpecs(
+                        new RefSpec("+refs/heads/*:" + SHARED_REFS + fork + "/heads/*"),
+                        new RefSpec("+refs/tags/*:" + SHARED_REFS + fork + "/tags/*"));
+                if (credentials != null) {
+                    fetch.setCredentialsProvider(credentials);
+                }
+                fetchResult = fetch.call();
+            }
+
+            try (Git git = Git.init().setDirectory(targetDir).call()) {
+                writeAlternates(git.getRepository(), new File(storeDir, "objects"));
+            }
+            // Reopen so the object database picks up the alternates file
+            try (Repository repository = new FileRepositoryBuilder()
+                    .setGitDir(new File(targetDir, Constants.DOT_GIT)).build()) {
+                configureOrigin(repository, uri);
+                if (!sparsePatterns.isEmpty()) {
+                    SparseCheckout.configure(repository, sparsePatterns);
+                }
+                String branch = createRefs(repository, fetchResult);
+                if (branch != null) {
+                    checkoutBranch(repository, branch);
+                }
+            }
+        }
+        return key;
+    }
+
+    /**
+     * Garbage-collect every cache while keeping all objects any dependent repository can reach
+     */
+    String collectGarbage() throws Exception {
+        StringBuilder output = new StringBuilder();
+        File[] stores = new File(workspace, STORE_PATH).listFiles();
+        if (stores == null) {
+            return output.toString();
+        }
+        for (File storeDir : stores) {
+            if (!storeDir.isDirectory() || !storeDir.getName().endsWith(".git")) {
+                continue;
+            }
+            String key = storeDir.getName().substring(0, storeDir.getName().length() - 4);
+            synchronized (lockFor(key)) {
+                long before = directorySize(storeDir);
+                List<File> dependents = findDependents(new File(storeDir, "objects"));
+                try (Repository store = openStore(storeDir); Git storeGit = new Git(store)) {
+                    pinDependents(store, storeGit, dependents);
+                    storeGit.gc().call();
+                }
+                long after = directorySize(storeDir);
+                output.append("STORE:").append(key).append("\n");
+                output.append("DEPENDENTS:").append(dependents.size()).append("\n");
+                output.append("BYTES_BEFORE:").append(before).append("\n");
+                output.append("BYTES_AFTER:").append(after).append("\n");
+                output.append("STORE_SEPARATOR\n");
+                EventLog.i(TAG, "Collected shared store {}: {} -> {} bytes", key, before, after);
+            }
+        }
+        return output.toString();
+    }
+
+    /**
+     * Replace refs/dependents/* with the current refs of every dependent clone
+     * Fetching (rather than only writing refs) also copies objects that exist
+     * solely in a dependent, so their ancestors in the cache stay reachable.
+     */
+    private void pinDependents(Repository store, Git storeGit, List<File> dependents) throws Exception {
+        BatchRefUpdate clear = store.getRefDatabase().newBatchUpdate();
+        for (Ref ref : store.getRefDatabase().getRefsByPrefix(DEPENDENT_REFS)) {
+            clear.addCommand(new ReceiveCommand(ref.getObjectId(), ObjectId.zeroId(), ref.getName()));
+        }
+        if (!clear.getCommands().isEmpty()) {
+            try (RevWalk walk = new RevWalk(store)) {
+                clear.execute(walk, NullProgressMonitor.INSTANCE);
+            }
+        }
+
+        // A failing fetch propagates and aborts the collection of this cache
+        for (File dependent : dependents) {
+            String namespace = DEPENDENT_REFS + sanitize(dependent.getAbsolutePath());
+            List<RefSpec> specs = new ArrayList<>();
+            specs.add(new RefSpec("+refs/*:" + namespace + "/*"));
+            try (Repository repository = new FileRepositoryBuilder().setGitDir(dependent).build()) {
+                // A detached HEAD is not covered by refs/*; an unborn one cannot be fetched
+                if (repository.resolve(Constants.HEAD) != null) {
+                    specs.add(new RefSpec("+HEAD:" + namespace + "/HEAD"));
+                }
+            }
+            storeGit.fetch()
+                .setRemote(dependent.getAbsolutePath())
+                .setRefSpecs(specs)
+                .call();
+        }
+    }
+
+    /**
+     * Workspace repositories whose alternates point at the given objects directory
+     */
+    private List<File> findDependents(File storeObjects) throws IOException {
+        List<File> dependents = new ArrayList<>();
+        File[] candidates = workspace.listFiles();
+        if (candidates == null) {
+            return dependents;
+        }
+        String target = storeObjects.getCanonicalPath();
+        for (File candidate : candidates) {
+            File alternates = new File(candidate, ".git/objects/info/alternates");
+            if (!alternates.isFile()) {
+                continue;
+            }
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(new FileInputStream(alternates), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!line.trim().isEmpty() && new File(line.trim()).getCanonicalPath().equals(target)) {
+                        dependents.add(new File(candidate, Constants.DOT_GIT));
+                        break;
+                    }
+                }
+            }
+        }
+        return dependents;
+    }
+
+    private static Repository openStore(File storeDir) throws Exception {
+        if (!new File(storeDir, "objects").isDirectory()) {
+            Git.init().setBare(true).setDirectory(storeDir).call().close();
+        }
+        return new FileRepositoryBuilder().setGitDir(storeDir).setBare().build();
+    }
+
+    private static void writeAlternates(Repository repository, File storeObjects) throws IOException {
+        File info = new File(repository.getDirectory(), "objects/info");
+        if (!info.isDirectory() && !info.mkdirs()) {
+            throw new IOException("Could not create " + info);
+        }
+        try (Writer writer = new OutputStreamWriter(
+                new FileOutputStream(new File(info, "alternates")), StandardCharsets.UTF_8)) {
+            writer.write(storeObjects.getAbsolutePath());
+            writer.write("\n");
+        }
+    }
+
+    private static void configureOrigin(Repository repository, URIish uri) throws Exception {
+        StoredConfig config = repository.getConfig();
+        RemoteConfig origin = new RemoteConfig(config, Constants.DEFAULT_REMOTE_NAME);
+        origin.addURI(uri);
+        origin.addFetchRefSpec(new RefSpec("+refs/heads/*:refs/remotes/origin/*"));
+        origin.update(config);
+        config.save();
+    }
+
+    /**
+     * Create remote-tracking branches and tags from the advertised refs in one batch
+     * @return the branch the remote HEAD points to, or null for an empty remote
+     */
+    private static String createRefs(Repository repository, FetchResult fetchResult) throws Exception {
+        BatchRefUpdate batch = repository.getRefDatabase().newBatchUpdate();
+        String headBranch = null;
+        Ref advertisedHead = fetchResult.getAdvertisedRef(Constants.HEAD);
+
+        for (Ref ref : fetchResult.getAdvertisedRefs()) {
+            String name = ref.getName();
+            ObjectId id = ref.getObjectId();
+            if (id == null) {
+                continue;
+            }
+            if (name.startsWith(Constants.R_HEADS)) {
+                String branch = name.substring(Constants.R_HEADS.length());
+                batch.addCommand(new ReceiveCommand(ObjectId.zeroId(), id, Constants.R_REMOTES + "origin/" + branch));
+                if (advertisedHead != null && id.equals(advertisedHead.getObjectId())
+                        && (headBranch == null || branch.equals("main") || branch.equals("master"))) {
+                    headBranch = branch;
+                }
+            } else if (name.startsWith(Constants.R_TAGS) && !name.endsWith("^{}")) {
+                batch.addCommand(new ReceiveCommand(ObjectId.zeroId(), id, name));
+            }
+        }
+        if (advertisedHead != null && advertisedHead.isSymbolic()
+                && advertisedHead.getTarget().getName().startsWith(Constants.R_HEADS)) {
+            headBranch = advertisedHead.getTarget().getName().substring(Constants.R_HEADS.length());
+        }
+
+        if (!batch.getCommands().isEmpty()) {
+            try (RevWalk walk = new RevWalk(repository)) {
+                batch.execute(walk, NullProgressMonitor.INSTANCE);
+            }
+            for (ReceiveCommand command : batch.getCommands()) {
+                if (command.getResult() != ReceiveCommand.Result.OK) {
+                    throw new IOException("Could not create " + command.getRefName() + ": " + command.getResult());
+                }
+            }
+        }
+        return headBranch;
+    }
+
+    /**
+     * Point HEAD at a new local branch tracking origin and check out its tree
+     */
+    private static void checkoutBranch(Repository repository, String branch) throws Exception {
+        ObjectId tip = repository.resolve(Constants.R_REMOTES + "origin/" + branch);
+        if (tip == null) {
+            return;
+        }
+        RevCommit commit;
+        try (RevWalk walk = new RevWalk(repository)) {
+            commit = walk.parseCommit(tip);
+        }
+
+        RefUpdate branchUpdate = repository.updateRef(Constants.R_HEADS + branch);
+        branchUpdate.setNewObjectId(commit);
+        checkRefUpdate(branchUpdate, branchUpdate.forceUpdate());
+
+        RefUpdate headUpdate = repository.updateRef(Constants.HEAD);
+        headUpdate.disableRefLog();
+        checkRefUpdate(headUpdate, headUpdate.link(Constants.R_HEADS + branch));
+
+        StoredConfig config = repository.getConfig();
+        config.setString(ConfigConstants.CONFIG_BRANCH_SECTION, branch,
+            ConfigConstants.CONFIG_KEY_REMOTE, Constants.DEFAULT_REMOTE_NAME);
+        config.setString(ConfigConstants.CONFIG_BRANCH_SECTION, branch,
+            ConfigConstants.CONFIG_KEY_MERGE, Constants.R_HEADS + branch);
+        config.save();
+
+        if (SparseCheckout.load(repository) != null) {
+            ParallelCheckout.hardReset(Git.wrap(repository), Constants.HEAD);
+            return;
+        }
+        DirCache dirCache = repository.lockDirCache();
+        DirCacheCheckout checkout = new DirCacheCheckout(repository, dirCache, commit.getTree());
+        checkout.checkout();
+    }
+
+    private static void checkRefUpdate(RefUpdate update, RefUpdate.Result result) throws IOException {
+        switch (result) {
+            case NEW:
+            case FORCED:
+            case FAST_FORWARD:
+            case NO_CHANGE:
+                return;
+            default:
+                throw new IOException("Could not update " + update.getName() + ": " + result);
+        }
+    }
+
+    /**
+     * Cache key: host plus repository name, so forks of the same project share a cache
+     * Unrelated repositories that happen to share a name only share storage: objects
+     * are content-addressed and each fork's refs live in their own namespace
+     */
+    private static String storeKey(URIish uri) {
+        String host = uri.getHost() != null ? uri.getHost() : "local";
+        return sanitize(host + "_" + uri.getHumanishName());
+    }
+
+    private static String sanitize(String value) {
+        String name = value;
+        if (name.endsWith(".git")) {
+            name = name.substring(0, name.length() - 4);
+        }
+        name = name.replaceAll("^/+", "");
+        return name.replaceAll("[^a-zA-Z0-9._-]", "_");
+    }
+
+    private static Object lockFor(String key) {
+        Object lock = LOCKS.get(key);
+        if (lock == null) {
+            Object created = new Object();
+            lock = LOCKS.putIfAbsent(key, created);
+            if (lock == null) {
+                lock = created;
+            }
+        }
+        return lock;
+    }
+
+    private static long directorySize(File file) {
+        if (file.isFile()) {
+            return file.length();
+        }
+        long size = 0;
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                size += directorySize(child);
+            }
+        }
+        return size;
+    }
+}
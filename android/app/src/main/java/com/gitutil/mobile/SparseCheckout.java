@@ -0,0 +1,144 @@
+package com.gitutil.mobile;
+
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.ignore.FastIgnoreRule;
+import org.eclipse.jgit.lib.ConfigConstants;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.StoredConfig;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Sparse checkout patterns of a repository
+ *
+ * Patterns use gitignore syntax and are kept where git keeps them: in
+ * .git/info/sparse-checkout, enabled by core.sparseCheckout. A path is
+ * checked out when the last pattern matching it, or one of its parent
+ * directories, is not negated. History and the index stay complete; only
+ * the working tree is limited, and index entries of paths outside the
+ * patterns carry the assume-valid flag.
+ */
+final class SparseCheckout {
+    private static final String TAG = "SparseCheckout";
+
+    static final String PATTERN_FILE = "info/sparse-checkout";
+    private static final String CONFIG_KEY_SPARSE_CHECKOUT = "sparseCheckout";
+
+    private final List<String> patterns;
+    private final List<FastIgnoreRule> rules;
+
+    private SparseCheckout(List<String> patterns, List<FastIgnoreRule> rules) {
+        this.patterns = patterns;
+        this.rules = rules;
+    }
+
+    /**
+     * Read the patterns of a repository
+     * @return null when sparse checkout is not enabled, i.e. the whole tree is checked out
+     */
+    static SparseCheckout load(Repository repository) throws IOException {
+        if (!repository.getConfig().getBoolean(ConfigConstants.CONFIG_CORE_SECTION, CONFIG_KEY_SPARSE_CHECKOUT, false)) {
+            return null;
+        }
+        File file = new File(repository.getDirectory(), PATTERN_FILE);
+        if (!file.isFile()) {
+            return null;
+        }
+        List<String> patterns = new ArrayList<>();
+        List<FastIgnoreRule> rules = new ArrayList<>();
+        for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+            String pattern = line.trim();
+            if (pattern.isEmpty() || pattern.startsWith("#")) {
+                continue;
+            }
+            FastIgnoreRule rule = new FastIgnoreRule(pattern);
+            if (!rule.isEmpty()) {
+                patterns.add(pattern);
+                rules.add(rule);
+            }
+        }
+        return new SparseCheckout(Collections.unmodifiableList(patterns), rules);
+    }
+
+    /**
+     * Store the patterns with the repository and enable sparse checkout
+     * An empty list disables it, so the next reset checks out the whole tree again
+     */
+    static void configure(Repository repository, List<String> patterns) throws IOException {
+        File file = new File(repository.getDirectory(), PATTERN_FILE);
+        StoredConfig config = repository.getConfig();
+        if (patterns == null || patterns.isEmpty()) {
+            config.unset(ConfigConstants.CONFIG_CORE_SECTION, null, CONFIG_KEY_SPARSE_CHECKOUT);
+            config.save();
+            Files.deleteIfExists(file.toPath());
+            clearAssumeValid(repository);
+            return;
+        }
+
+        File parent = file.getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Could not create " + parent);
+        }
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            for (String pattern : patterns) {
+                writer.write(pattern.trim());
+                writer.write('\n');
+            }
+        }
+        config.setBoolean(ConfigConstants.CONFIG_CORE_SECTION, null, CONFIG_KEY_SPARSE_CHECKOUT, true);
+        config.save();
+        EventLog.i(TAG, "Sparse checkout enabled with {} pattern(s)", patterns.size());
+    }
+
+    /**
+     * Clear the assume-valid flag of excluded entries, so the next reset writes them again
+     */
+    private static void clearAssumeValid(Repository repository) throws IOException {
+        DirCache dirCache = repository.lockDirCache();
+        try {
+            boolean changed = false;
+            for (int i = 0; i < dirCache.getEntryCount(); i++) {
+                DirCacheEntry entry = dirCache.getEntry(i);
+                if (entry.isAssumeValid()) {
+                    entry.setAssumeValid(false);
+                    changed = true;
+                }
+            }
+            if (changed) {
+                dirCache.write();
+                if (!dirCache.commit()) {
+                    throw new IOException("Could not write the index");
+                }
+            }
+        } finally {
+            dirCache.unlock();
+        }
+    }
+
+    /**
+     * Whether {@code path} (a file path relative to the work tree) is checked out
+     */
+    boolean includes(String path) {
+        for (int i = rules.size() - 1; i >= 0; i--) {
+            FastIgnoreRule rule = rules.get(i);
+            if (rule.isMatch(path, false, false)) {
+                return rule.getResult();
+            }
+        }
+        return false;
+    }
+
+    List<String> patterns() {
+        return patterns;
+    }
+}
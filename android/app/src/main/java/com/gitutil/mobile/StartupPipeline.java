@@ -0,0 +1,244 @@
+package com.gitutil.mobile;
+
+import android.app.Activity;
+import android.content.Context;
+import android.content.MutableContextWrapper;
+import android.os.Build;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.webkit.WebView;
+
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cold-start pipeline
+ *
+ * Moves the expensive first-use costs off the path to the first timeline:
+ * JGit class loading/static initialization and workspace discovery run on a
+ * background thread started from MainActivity, and the WebView (which loads
+ * the Chromium provider on first construction) is created while the main
+ * thread is idle. Startup milestones are recorded relative to process start
+ * so time-to-interactive can be tracked.
+ */
+final class StartupPipeline {
+    private static final String TAG = "StartupPipeline";
+
+    // Milestone reported by the UI once it is usable (first timeline, or the repo list without auto-load)
+    static final String MILESTONE_INTERACTIVE = "interactive";
+
+    // Number of workspace repositories opened during warm-up
+    private static final int WARM_REPOSITORY_LIMIT = 3;
+
+    // JGit classes on the pull-timeline / apply-rollback path
+    private static final String[] WARM_CLASSES = {
+        "org.eclipse.jgit.api.Git",
+        "org.eclipse.jgit.api.LogCommand",
+        "org.eclipse.jgit.api.ResetCommand",
+        "org.eclipse.jgit.internal.storage.file.FileRepository",
+        "org.eclipse.jgit.internal.storage.file.ObjectDirectory",
+        "org.eclipse.jgit.internal.storage.file.RefDirectory",
+        "org.eclipse.jgit.dircache.DirCache",
+        "org.eclipse.jgit.revwalk.RevWalk",
+        "org.eclipse.jgit.revwalk.RevCommit",
+        "org.eclipse.jgit.storage.file.FileRepositoryBuilder",
+        "org.eclipse.jgit.util.FS",
+    };
+
+    private static final Map<String, Long> MILESTONES = new LinkedHashMap<>();
+    // Warmed repositories by canonical git directory, handed to the first operation that opens them
+    private static final Map<File, Repository> WARM_REPOSITORIES = new HashMap<>();
+    private static long processStart = -1;
+    private static boolean started;
+    private static WebView prewarmedWebView;
+    private static Runnable interactiveListener;
+
+    private StartupPipeline() {
+    }
+
+    /**
+     * Start background warm-up; safe to call more than once
+     */
+    static synchronized void begin(Context context) {
+        if (started) {
+            return;
+        }
+        started = true;
+        processStart = Build.VERSION.SDK_INT >= Build.VERSION_CODES.N
+            ? android.os.Process.getStartElapsedRealtime()
+            : SystemClock.elapsedRealtime();
+        EventLog.init(context.getApplicationContext());
+        mark("launch");
+
+        final Context appContext = context.getApplicationContext();
+        Thread warmup = new Thread(() -> {
+            android.os.Process.setThreadPriority(android.os.Process.THREAD_PRIORITY_BACKGROUND);
+            StorageProfile.installForDevice(appContext);
+            warmJGitClasses();
+            warmWorkspace();
+            mark("jgit_warm");
+        }, "jgit-warmup");
+        warmup.setDaemon(true);
+        warmup.start();
+    }
+
+    /**
+     * Create the WebView once the main thread is idle, so its first
+     * construction does not happen inside GitUtilActivity.onCreate
+     */
+    static void prewarmWebView(Context context) {
+        final Context appContext = context.getApplicationContext();
+        Looper.myQueue().addIdleHandler(() -> {
+            synchronized (StartupPipeline.class) {
+                if (prewarmedWebView == null) {
+                    prewarmedWebView = new WebView(new MutableContextWrapper(appContext));
+                    mark("webview_prewarmed");
+                }
+            }
+            return false;
+        });
+    }
+
+    /**
+     * Hand out the prewarmed WebView re-parented to the activity, or create a new one
+     */
+    static synchronized WebView obtainWebView(Activity activity) {
+        WebView webView = prewarmedWebView;
+        prewarmedWebView = null;
+        if (webView != null && webView.getContext() instanceof MutableContextWrapper) {
+            ((MutableContextWrapper) webView.getContext()).setBaseContext(activity);
+            mark("webview_reused");
+            return webView;
+        }
+        return new WebView(activity);
+    }
+
+    /**
+     * Called once when the UI reports it is interactive, e.g. to call reportFullyDrawn()
+     */
+    static synchronized void setInteractiveListener(Runnable listener) {
+        interactiveListener = listener;
+    }
+
+    /**
+     * Record a startup milestone; only the first occurrence of each name is kept
+     */
+    static void mark(String milestone) {
+        Runnable listener = null;
+        long elapsed;
+        synchronized (StartupPipeline.class) {
+            if (MILESTONES.containsKey(milestone)) {
+                return;
+            }
+            elapsed = processStart >= 0 ? SystemClock.elapsedRealtime() - processStart : 0;
+            MILESTONES.put(milestone, elapsed);
+            if (MILESTONE_INTERACTIVE.equals(milestone)) {
+                listener = interactiveListener;
+            }
+        }
+        EventLog.i(TAG, "Startup milestone {} at +{}ms", milestone, elapsed);
+        if (listener != null) {
+            listener.run();
+        }
+    }
+
+    /**
+     * Render recorded milestones in bridge output format
+     */
+    static synchronized String metrics() {
+        StringBuilder output = new StringBuilder();
+        output.append("STARTUP_BEGIN\n");
+        for (Map.Entry<String, Long> milestone : MILESTONES.entrySet()) {
+            output.append("MILESTONE:").append(milestone.getKey()).append(":").append(milestone.getValue()).append("\n");
+        }
+        Long interactive = MILESTONES.get(MILESTONE_INTERACTIVE);
+        if (interactive != null) {
+            output.append("TIME_TO_INTERACTIVE_MS:").append(interactive).append("\n");
+        }
+        output.append("STARTUP_END");
+        return output.toString();
+    }
+
+    private static void warmJGitClasses() {
+        ClassLoader loader = StartupPipeline.class.getClassLoader();
+        for (String className : WARM_CLASSES) {
+            try {
+                Class.forName(className, true, loader);
+            } catch (Throwable e) {
+                EventLog.w(TAG, "Could not preload {}: {}", className, e);
+            }
+        }
+    }
+
+    /**
+     * Take the repository warmed for {@code gitDir}, if any; the caller owns and closes it
+     */
+    static Repository takeWarmRepository(File gitDir) {
+        try {
+            File key = gitDir.getCanonicalFile();
+            synchronized (WARM_REPOSITORIES) {
+                return WARM_REPOSITORIES.remove(key);
+            }
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Open the first few workspace repositories and parse HEAD, which runs
+     * config parsing, ref reading and pack index loading ahead of time
+     *
+     * The repositories stay open until the first operation on them takes them
+     * over, since closing one discards the pack and index state just loaded.
+     */
+    private static void warmWorkspace() {
+        File[] candidates = new File(GitBridge.DEFAULT_WORKSPACE_PATH).listFiles();
+        if (candidates == null) {
+            return;
+        }
+        int warmed = 0;
+        for (File candidate : candidates) {
+            if (warmed >= WARM_REPOSITORY_LIMIT) {
+                break;
+            }
+            File gitDir = new File(candidate, Constants.DOT_GIT);
+            if (!gitDir.isDirectory()) {
+                continue;
+            }
+            Repository repository = null;
+            try {
+                File key = gitDir.getCanonicalFile();
+                repository = new FileRepositoryBuilder().setGitDir(key).build();
+                try (RevWalk revWalk = new RevWalk(repository)) {
+                    ObjectId head = repository.resolve(Constants.HEAD);
+                    if (head != null) {
+                        revWalk.parseCommit(head);
+                    }
+                }
+                synchronized (WARM_REPOSITORIES) {
+                    if (!WARM_REPOSITORIES.containsKey(key)) {
+                        WARM_REPOSITORIES.put(key, repository);
+                        repository = null;
+                    }
+                }
+                warmed++;
+            } catch (Exception e) {
+                // Storage permission may not be granted yet; warm-up is best effort
+                EventLog.w(TAG, "Warm-up skipped {}: {}", candidate.getName(), e);
+            } finally {
+                if (repository != null) {
+                    repository.close();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package com.gitutil.mobile;
+
+import android.app.ActivityManager;
+import android.content.Context;
+
+import org.eclipse.jgit.storage.file.WindowCacheConfig;
+import org.eclipse.jgit.storage.file.WindowCacheStats;
+
+import java.util.Locale;
+
+/**
+ * Device-adaptive JGit storage configuration
+ *
+ * JGit's WindowCacheConfig defaults (10 MB pack window cache, 10 MB delta base
+ * cache, 50 MB streaming threshold) are too large for low-RAM phones and leave
+ * memory unused on high-end devices. The profile is derived from the Java heap
+ * limit, the ActivityManager memory class and the total device RAM, and is
+ * installed once per process before the first repository is opened.
+ */
+final class StorageProfile {
+    private static final String TAG = "StorageProfile";
+
+    private static final long MB = WindowCacheConfig.MB;
+    private static final long GB = 1024 * MB;
+
+    enum Tier { LOW, STANDARD, HIGH }
+
+    private static StorageProfile installed;
+
+    final Tier tier;
+    final long heapBudget;
+    final int windowSize;
+    final long packedGitLimit;
+    final int openFiles;
+    final int deltaBaseCacheLimit;
+    final int streamFileThreshold;
+    final boolean mmap;
+
+    private StorageProfile(Tier tier, long heapBudget, boolean is64Bit) {
+        this.tier = tier;
+        this.heapBudget = heapBudget;
+        switch (tier) {
+            case LOW:
+                windowSize = 8 * WindowCacheConfig.KB;
+                openFiles = 32;
+                break;
+            case HIGH:
+                windowSize = 64 * WindowCacheConfig.KB;
+                openFiles = 256;
+                break;
+            default:
+                windowSize = 16 * WindowCacheConfig.KB;
+                openFiles = 128;
+                break;
+        }
+        // Pack windows and delta bases share the heap with the WebView and the app,
+        // so each cache gets a bounded fraction of the budget
+        packedGitLimit = clamp(heapBudget / 8, 4 * MB, 256 * MB);
+        deltaBaseCacheLimit = (int) clamp(heapBudget / 16, 2 * MB, 64 * MB);
+        // Objects above this size are streamed instead of inflated into one byte[]
+        streamFileThreshold = (int) clamp(heapBudget / 8, 1 * MB, 64 * MB);
+        // mmap'd windows cost address space rather than heap; only worth it with a 64-bit address space
+        mmap = tier == Tier.HIGH && is64Bit;
+    }
+
+    /**
+     * Select a profile for an Android device
+     */
+    static StorageProfile forDevice(Context context) {
+        long maxHeap = Runtime.getRuntime().maxMemory();
+        ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        if (activityManager == null) {
+            return forHeap(maxHeap, false, is64BitJvm());
+        }
+
+        long memoryClass = activityManager.getMemoryClass() * MB;
+        long heapBudget = memoryClass > 0 ? Math.min(memoryClass, maxHeap) : maxHeap;
+
+        ActivityManager.MemoryInfo memoryInfo = new ActivityManager.MemoryInfo();
+        activityManager.getMemoryInfo(memoryInfo);
+
+        Tier tier;
+        if (activityManager.isLowRamDevice() || memoryInfo.totalMem < 3 * GB || heapBudget < 192 * MB) {
+            tier = Tier.LOW;
+        } else if (memoryInfo.totalMem >= 6 * GB && heapBudget >= 256 * MB) {
+            tier = Tier.HIGH;
+        } else {
+            tier = Tier.STANDARD;
+        }
+        return new StorageProfile(tier, heapBudget, android.os.Process.is64Bit());
+    }
+
+    /**
+     * Select a profile from the JVM heap limit alone (desktop, or no Context available)
+     */
+    static StorageProfile forHeap(long maxHeap, boolean lowRam, boolean is64Bit) {
+        Tier tier;
+        if (lowRam || maxHeap < 192 * MB) {
+            tier = Tier.LOW;
+        } else if (maxHeap >= 512 * MB) {
+            tier = Tier.HIGH;
+        } else {
+            tier = Tier.STANDARD;
+        }
+        return new StorageProfile(tier, maxHeap, is64Bit);
+    }
+
+    /**
+     * Install this profile as the process-wide JGit window cache configuration
+     */
+    void install() {
+        WindowCacheConfig config = new WindowCacheConfig();
+        config.setPackedGitWindowSize(windowSize);
+        config.setPackedGitLimit(packedGitLimit);
+        config.setPackedGitOpenFiles(openFiles);
+        config.setDeltaBaseCacheLimit(deltaBaseCacheLimit);
+        config.setStreamFileThreshold(streamFileThreshold);
+        config.setPackedGitMMAP(mmap);
+        // There is no JMX on Android
+        config.setExposeStatsViaJmx(false);
+        synchronized (StorageProfile.class) {
+            config.install();
+            installed = this;
+        }
+        EventLog.i(TAG, "Installed storage profile {}", describe());
+    }
+
+    /**
+     * Install the device profile unless one is already active
+     * Reinstalling would discard the warm window cache, e.g. on activity recreation
+     */
+    static synchronized StorageProfile installForDevice(Context context) {
+        if (installed == null) {
+            forDevice(context).install();
+        }
+        return installed;
+    }
+
+    /**
+     * Make sure some profile is installed, falling back to the JVM heap limit
+     */
+    static synchronized StorageProfile ensureInstalled() {
+        if (installed == null) {
+            forHeap(Runtime.getRuntime().maxMemory(), false, is64BitJvm()).install();
+        }
+        return installed;
+    }
+
+    String describe() {
+        return tier + " (heap budget " + (heapBudget / MB) + " MB, window " + (windowSize / 1024) + " KB, "
+            + "cache " + (packedGitLimit / MB) + " MB, delta base " + (deltaBaseCacheLimit / MB) + " MB, "
+            + "stream threshold " + (streamFileThreshold / MB) + " MB, mmap " + mmap + ")";
+    }
+
+    /**
+     * Render the active profile and window cache statistics in bridge output format
+     */
+    static String statistics() {
+        StorageProfile profile = ensureInstalled();
+        WindowCacheStats stats = WindowCacheStats.getStats();
+
+        StringBuilder output = new StringBuilder();
+        output.append("STORAGE_PROFILE:").append(profile.tier).append("\n");
+        output.append("HEAP_BUDGET_MB:").append(profile.heapBudget / MB).append("\n");
+        output.append("WINDOW_SIZE_KB:").append(profile.windowSize / 1024).append("\n");
+        output.append("PACKED_GIT_LIMIT_MB:").append(profile.packedGitLimit / MB).append("\n");
+        output.append("OPEN_FILES_LIMIT:").append(profile.openFiles).append("\n");
+        output.append("DELTA_BASE_CACHE_MB:").append(profile.deltaBaseCacheLimit / MB).append("\n");
+        output.append("STREAM_THRESHOLD_MB:").append(profile.streamFileThreshold / MB).append("\n");
+        output.append("MMAP:").append(profile.mmap).append("\n");
+        output.append("CACHE_HITS:").append(stats.getHitCount()).append("\n");
+        output.append("CACHE_MISSES:").append(stats.getMissCount()).append("\n");
+        output.append("CACHE_HIT_RATIO:").append(String.format(Locale.US, "%.3f", stats.getHitRatio())).append("\n");
+        output.append("CACHE_EVICTIONS:").append(stats.getEvictionCount()).append("\n");
+        output.append("OPEN_FILES:").append(stats.getOpenFileCount()).append("\n");
+        output.append("OPEN_BYTES:").append(stats.getOpenByteCount()).append("\n");
+        return output.toString();
+    }
+
+    private static long clamp(long value, long min, long max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    private static boolean is64BitJvm() {
+        String arch = System.getProperty("os.arch", "");
+        return arch.contains("64");
+    }
+}
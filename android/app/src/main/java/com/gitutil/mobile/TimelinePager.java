@@ -0,0 +1,358 @@
+package com.gitutil.mobile;
+
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevFlag;
+import org.eclipse.jgit.revwalk.RevObject;
+import org.eclipse.jgit.revwalk.RevSort;
+import org.eclipse.jgit.revwalk.RevWalk;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Paged timeline walks
+ *
+ * Keeps a RevWalk open per repository so that consecutive page requests
+ * continue where the previous page stopped instead of re-walking history
+ * from HEAD. A session is restarted when the requested offset does not match
+ * its position or when HEAD moved (e.g. after a rollback).
+ *
+ * In all-refs mode the walk starts from HEAD, every local branch, every
+ * remote-tracking branch and every tag at once, like git log --all. Commits
+ * come out newest first by commit time as the walk discovers them; unlike a
+ * topological sort this never loads the whole graph before the first page.
+ * Each commit is decorated with the refs pointing at it, and commits HEAD
+ * cannot reach are marked, since the current branch cannot be rolled back
+ * to them.
+ *
+ * Walks lock only their own repository: a slow walk of one repository, such
+ * as a background prefetch, never holds up a page request for another.
+ */
+final class TimelinePager {
+    private static final String TAG = "TimelinePager";
+
+    static final int DEFAULT_PAGE_SIZE = 100;
+    static final int MAX_PAGE_SIZE = 1000;
+
+    // Open walks kept at the same time; each one holds an open Repository
+    private static final int MAX_SESSIONS = 4;
+
+    // Refs the all-refs mode starts from, besides HEAD
+    private static final String[] ALL_REFS_PREFIXES = {Constants.R_HEADS, Constants.R_REMOTES, Constants.R_TAGS};
+
+    /**
+     * Opens repositories the same way GitBridge does
+     */
+    interface RepositoryOpener {
+        Repository open(String path) throws Exception;
+    }
+
+    private final RepositoryOpener opener;
+    // Guarded by this; the monitor is only held for map updates, never during a walk
+    private final Map<String, Session> sessions = new LinkedHashMap<>(8, 0.75f, true);
+    private final Map<String, Object> locks = new HashMap<>();
+    // Repositories with a page request in progress; their sessions are never evicted
+    private final Set<String> active = new HashSet<>();
+
+    TimelinePager(RepositoryOpener opener) {
+        this.opener = opener;
+    }
+
+    /**
+     * Append one page of SNAPSHOT blocks followed by TIMELINE_* paging markers
+     */
+    void page(String path, int offset, int limit, StringBuilder output) throws Exception {
+        page(path, offset, limit, false, false, output);
+    }
+
+    /**
+     * Append one page of SNAPSHOT blocks followed by TIMELINE_* paging markers
+     * @param allRefs walk from all branches, remote-tracking branches and tags, with REF decorations
+     * @param withBody include the message body as BODY lines
+     */
+    void page(String path, int offset, int limit, boolean allRefs, boolean withBody,
+              StringBuilder output) throws Exception {
+        limit = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        synchronized (lockFor(path)) {
+            Session session;
+            synchronized (this) {
+                active.add(path);
+                session = sessions.get(path);
+            }
+            try {
+                if (session != null && (offset == 0 || !session.hasMode(allRefs, withBody)
+                        || !session.canContinue(offset))) {
+                    release(path);
+                    session = null;
+                }
+                if (session == null) {
+                    session = new Session(opener.open(path), allRefs, withBody);
+                    synchronized (this) {
+                        sessions.put(path, session);
+                        trimSessions();
+                    }
+                    session.skipTo(offset);
+                }
+
+                int count = 0;
+                while (count < limit) {
+                    RevCommit commit = session.next();
+                    if (commit == null) {
+                        break;
+                    }
+                    session.append(output, commit);
+                    count++;
+                }
+                boolean more = session.hasNext();
+
+                output.append("TIMELINE_OFFSET:").append(offset).append("\n");
+                output.append("TIMELINE_COUNT:").append(count).append("\n");
+                output.append("TIMELINE_MORE:").append(more).append("\n");
+
+                if (!more) {
+                    release(path);
+                }
+            } finally {
+                synchronized (this) {
+                    active.remove(path);
+                }
+            }
+        }
+    }
+
+    /**
+     * Whether the next HEAD-only page request at {@code offset} would continue an open walk
+     */
+    boolean canContinue(String path, int offset) {
+        synchronized (lockFor(path)) {
+            Session session;
+            synchronized (this) {
+                active.add(path);
+                session = sessions.get(path);
+            }
+            try {
+                return session != null && session.hasMode(false, false) && session.canContinue(offset);
+            } finally {
+                synchronized (this) {
+                    active.remove(path);
+                }
+            }
+        }
+    }
+
+    /**
+     * Close the walk of a repository, e.g. before it is deleted
+     * Waits for a page request of the same repository that is in progress
+     */
+    void release(String path) {
+        synchronized (lockFor(path)) {
+            Session session;
+            synchronized (this) {
+                session = sessions.remove(path);
+            }
+            if (session != null) {
+                session.close();
+            }
+        }
+    }
+
+    private synchronized Object lockFor(String path) {
+        Object lock = locks.get(path);
+        if (lock == null) {
+            lock = new Object();
+            locks.put(path, lock);
+        }
+        return lock;
+    }
+
+    static void appendSnapshot(StringBuilder output, RevCommit commit) {
+        output.append("SNAPSHOT_BEGIN\n");
+        output.append("IDENTIFIER:").append(commit.getName()).append("\n");
+        output.append("CONTRIBUTOR:").append(commit.getAuthorIdent().getName()).append("\n");
+        output.append("WHEN:").append(commit.getCommitTime()).append("\n");
+        output.append("TITLE:").append(commit.getShortMessage()).append("\n");
+        output.append("SNAPSHOT_END\n");
+    }
+
+    /**
+     * Close the least recently used sessions beyond MAX_SESSIONS; caller holds this monitor
+     */
+    private void trimSessions() {
+        Iterator<Map.Entry<String, Session>> iterator = sessions.entrySet().iterator();
+        while (sessions.size() > MAX_SESSIONS && iterator.hasNext()) {
+            Map.Entry<String, Session> eldest = iterator.next();
+            // A session being walked stays open; the map shrinks on a later request
+            if (active.contains(eldest.getKey())) {
+                continue;
+            }
+            iterator.remove();
+            eldest.getValue().close();
+        }
+    }
+
+    /**
+     * The refs a walk starts from, by name; peeled later since packed tags may not be
+     */
+    private static Map<String, ObjectId> currentTips(Repository repository, boolean allRefs) throws IOException {
+        Map<String, ObjectId> tips = new TreeMap<>();
+        ObjectId head = repository.resolve(Constants.HEAD);
+        if (head != null) {
+            tips.put(Constants.HEAD, head);
+        }
+        if (allRefs) {
+            for (String prefix : ALL_REFS_PREFIXES) {
+                for (Ref ref : repository.getRefDatabase().getRefsByPrefix(prefix)) {
+                    // Symbolic refs such as origin/HEAD would only repeat a branch
+                    if (!ref.isSymbolic() && ref.getObjectId() != null) {
+                        tips.put(ref.getName(), ref.getObjectId());
+                    }
+                }
+            }
+        }
+        return tips;
+    }
+
+    /**
+     * An open history walk from the refs seen when the session started
+     */
+    private static final class Session {
+        private final Repository repository;
+        private final RevWalk walk;
+        private final boolean allRefs;
+        private final boolean withBody;
+        private final Map<String, ObjectId> tips;
+        // Ref names by the commit they point at; empty unless walking all refs
+        private final Map<ObjectId, List<String>> decorations = new HashMap<>();
+        // Carried from HEAD to its ancestors as the walk reaches them; null unless walking all refs
+        private final RevFlag fromHead;
+        private RevCommit pending;
+        private int position;
+
+        Session(Repository repository, boolean allRefs, boolean withBody) throws Exception {
+            this.repository = repository;
+            this.walk = new RevWalk(repository);
+            this.allRefs = allRefs;
+            this.withBody = withBody;
+            this.tips = currentTips(repository, allRefs);
+            // Commit time order is produced incrementally; TOPO would walk the whole graph first
+            walk.sort(RevSort.COMMIT_TIME_DESC);
+            fromHead = allRefs ? walk.newFlag("HEAD") : null;
+            if (fromHead != null) {
+                walk.carry(fromHead);
+            }
+            for (Map.Entry<String, ObjectId> tip : tips.entrySet()) {
+                RevObject object;
+                try {
+                    object = walk.peel(walk.parseAny(tip.getValue()));
+                } catch (IOException e) {
+                    EventLog.w(TAG, "Skipping unreadable ref {}: {}", tip.getKey(), e);
+                    continue;
+                }
+                if (!(object instanceof RevCommit)) {
+                    continue;
+                }
+                walk.markStart((RevCommit) object);
+                if (fromHead != null && tip.getKey().equals(Constants.HEAD)) {
+                    object.add(fromHead);
+                }
+                if (allRefs) {
+                    List<String> names = decorations.get(object);
+                    if (names == null) {
+                        names = new ArrayList<>(1);
+                        decorations.put(object.copy(), names);
+                    }
+                    names.add(tip.getKey());
+                }
+            }
+            pending = walk.next();
+        }
+
+        boolean hasMode(boolean allRefs, boolean withBody) {
+            return this.allRefs == allRefs && this.withBody == withBody;
+        }
+
+        boolean canContinue(int offset) {
+            try {
+                return offset == position && tips.equals(currentTips(repository, allRefs));
+            } catch (Exception e) {
+                EventLog.w(TAG, "Could not read refs: {}", e);
+                return false;
+            }
+        }
+
+        void skipTo(int offset) throws Exception {
+            while (position < offset && next() != null) {
+                // advance only
+            }
+        }
+
+        RevCommit next() throws Exception {
+            RevCommit current = pending;
+            if (current != null) {
+                pending = walk.next();
+                position++;
+            }
+            return current;
+        }
+
+        boolean hasNext() {
+            return pending != null;
+        }
+
+        void append(StringBuilder output, RevCommit commit) {
+            if (!allRefs && !withBody) {
+                appendSnapshot(output, commit);
+            } else {
+                output.append("SNAPSHOT_BEGIN\n");
+                output.append("IDENTIFIER:").append(commit.getName()).append("\n");
+                output.append("CONTRIBUTOR:").append(commit.getAuthorIdent().getName()).append("\n");
+                output.append("WHEN:").append(commit.getCommitTime()).append("\n");
+                output.append("TITLE:").append(commit.getShortMessage()).append("\n");
+                List<String> names = decorations.get(commit);
+                if (names != null) {
+                    for (String name : names) {
+                        output.append("REF:").append(name).append("\n");
+                    }
+                }
+                if (fromHead != null && !commit.has(fromHead)) {
+                    output.append("REACHABLE:false\n");
+                }
+                String body = withBody ? body(commit.getFullMessage()) : "";
+                if (!body.isEmpty()) {
+                    // One BODY line per message line so the line-based format stays intact
+                    for (String line : body.split("\n", -1)) {
+                        output.append("BODY:").append(line).append("\n");
+                    }
+                }
+                output.append("SNAPSHOT_END\n");
+            }
+            // Pages are formatted once; the walk does not need the raw message again
+            commit.disposeBody();
+        }
+
+        void close() {
+            walk.close();
+            repository.close();
+        }
+    }
+
+    /**
+     * The message without its subject paragraph, or an empty string
+     */
+    private static String body(String message) {
+        int end = message.indexOf("\n\n");
+        return end < 0 ? "" : message.substring(end + 2).trim();
+    }
+}
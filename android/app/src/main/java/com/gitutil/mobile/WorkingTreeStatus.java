@@ -0,0 +1,499 @@
+package com.gitutil.mobile;
+
+import android.os.FileObserver;
+
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.dircache.DirCacheIterator;
+import org.eclipse.jgit.ignore.IgnoreNode;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.EmptyTreeIterator;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Fast working-tree status based on the DirCache stat data
+ *
+ * Files whose size and modification time still match the index entry are
+ * treated as clean without being read; only changed (or racily clean) files
+ * are hashed. Top-level directories are scanned in parallel and results are
+ * cached per repository until a FileObserver reports a change in one of the
+ * scanned directories, or the index file or HEAD moves.
+ */
+final class WorkingTreeStatus {
+    private static final String TAG = "WorkingTreeStatus";
+
+    // Upper bound for directory watches per repository; larger trees are not cached
+    private static final int MAX_WATCHED_DIRS = 512;
+
+    private static final int WATCH_MASK = FileObserver.CREATE | FileObserver.DELETE
+        | FileObserver.MODIFY | FileObserver.CLOSE_WRITE | FileObserver.ATTRIB
+        | FileObserver.MOVED_FROM | FileObserver.MOVED_TO
+        | FileObserver.DELETE_SELF | FileObserver.MOVE_SELF;
+
+    private static final ExecutorService SCAN_POOL = Executors.newFixedThreadPool(
+        Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors())),
+        runnable -> {
+            Thread thread = new Thread(runnable, "status-scan");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+    private static final Map<String, CachedStatus> CACHE = new ConcurrentHashMap<>();
+
+    private WorkingTreeStatus() {
+    }
+
+    /**
+     * Result of a status computation
+     */
+    static final class Result {
+        final String branch;
+        final List<String> staged = new ArrayList<>();
+        final List<String> modified = new ArrayList<>();
+        final List<String> missing = new ArrayList<>();
+        final List<String> untracked = new ArrayList<>();
+        int filesRead;
+        boolean fromCache;
+
+        Result(String branch) {
+            this.branch = branch;
+        }
+
+        /**
+         * A copy for one caller, so cached results are never changed after they were stored
+         */
+        Result copy(boolean cached) {
+            Result copy = new Result(branch);
+            copy.staged.addAll(staged);
+            copy.modified.addAll(modified);
+            copy.missing.addAll(missing);
+            copy.untracked.addAll(untracked);
+            copy.filesRead = filesRead;
+            copy.fromCache = cached;
+            return copy;
+        }
+
+        boolean isClean() {
+            return staged.isEmpty() && modified.isEmpty() && missing.isEmpty() && untracked.isEmpty();
+        }
+
+        /**
+         * Changes to tracked files, i.e. what a hard reset discards; untracked files survive it
+         */
+        int trackedChangeCount() {
+            return staged.size() + modified.size() + missing.size();
+        }
+    }
+
+    /**
+     * Compute the status of the repository, served from cache when nothing changed
+     */
+    static Result compute(Repository repository) throws IOException {
+        File workTree = repository.getWorkTree();
+        String key = workTree.getAbsolutePath();
+        File indexFile = repository.getIndexFile();
+        ObjectId head = repository.resolve(Constants.HEAD);
+
+        CachedStatus cached = CACHE.get(key);
+        if (cached != null && cached.matches(indexFile, head)) {
+            return cached.result.copy(true);
+        }
+        if (cached != null) {
+            invalidate(workTree);
+        }
+
+        long started = System.currentTimeMillis();
+        Result result = new Result(repository.getBranch());
+        // Watches start before each directory is listed, so edits made during the scan are noticed
+        CachedStatus entry = new CachedStatus(key, workTree, indexFile, head);
+        DirCache dirCache = repository.readDirCache();
+
+        collectStaged(repository, dirCache, head, result);
+
+        Scan scan = new Scan(repository, dirCache, indexFile.lastModified(), entry);
+        try {
+            scan.run(result);
+        } catch (IOException | RuntimeException e) {
+            entry.stopWatching();
+            throw e;
+        }
+
+        Collections.sort(result.modified);
+        Collections.sort(result.missing);
+        Collections.sort(result.untracked);
+
+        EventLog.i(TAG, "Status computed in {}ms, {} file(s) read",
+            System.currentTimeMillis() - started, result.filesRead);
+
+        entry.store(result);
+        return result;
+    }
+
+    /**
+     * Drop the cached status of a working tree, e.g. after the bridge reset it
+     */
+    static void invalidate(File workTree) {
+        if (workTree == null) {
+            return;
+        }
+        CachedStatus removed = CACHE.remove(workTree.getAbsolutePath());
+        if (removed != null) {
+            removed.stopWatching();
+        }
+    }
+
+    /**
+     * Compare HEAD against the index; this never touches the working tree
+     */
+    private static void collectStaged(Repository repository, DirCache dirCache, ObjectId head, Result result)
+            throws IOException {
+        try (TreeWalk treeWalk = new TreeWalk(repository)) {
+            treeWalk.setRecursive(true);
+            if (head != null) {
+                try (RevWalk revWalk = new RevWalk(repository)) {
+                    treeWalk.addTree(revWalk.parseCommit(head).getTree());
+                }
+            } else {
+                treeWalk.addTree(new EmptyTreeIterator());
+            }
+            treeWalk.addTree(new DirCacheIterator(dirCache));
+            treeWalk.setFilter(TreeFilter.ANY_DIFF);
+
+            while (treeWalk.next()) {
+                boolean inHead = treeWalk.getRawMode(0) != 0;
+                boolean inIndex = treeWalk.getRawMode(1) != 0;
+                String kind = !inHead ? "A" : !inIndex ? "D" : "M";
+                result.staged.add(kind + ":" + treeWalk.getPathString());
+            }
+        }
+    }
+
+    /**
+     * A single parallel scan of the working tree against the index
+     */
+    private static final class Scan {
+        private final File workTree;
+        private final long indexModified;
+        private final Map<String, DirCacheEntry> entries = new HashMap<>();
+        private final Set<String> trackedDirs = new HashSet<>();
+        private final Set<String> seen = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        private final CachedStatus watches;
+        private final IgnoreNode excludes;
+        // Paths outside the patterns are tracked but intentionally absent from the work tree
+        private final SparseCheckout sparse;
+
+        Scan(Repository repository, DirCache dirCache, long indexModified, CachedStatus watches) throws IOException {
+            this.workTree = repository.getWorkTree();
+            this.indexModified = indexModified;
+            this.watches = watches;
+            for (int i = 0; i < dirCache.getEntryCount(); i++) {
+                DirCacheEntry entry = dirCache.getEntry(i);
+                String path = entry.getPathString();
+                entries.put(path, entry);
+                int slash = path.lastIndexOf('/');
+                while (slash > 0) {
+                    path = path.substring(0, slash);
+                    if (!trackedDirs.add(path)) {
+                        break;
+                    }
+                    slash = path.lastIndexOf('/');
+                }
+            }
+            this.excludes = loadIgnoreNode(new File(repository.getDirectory(), "info/exclude"));
+            this.sparse = SparseCheckout.load(repository);
+        }
+
+        void run(Result result) throws IOException {
+            List<IgnoreLevel> rootLevels = new ArrayList<>();
+            if (excludes != null) {
+                rootLevels.add(new IgnoreLevel("", excludes));
+            }
+            IgnoreNode rootIgnore = loadIgnoreNode(new File(workTree, Constants.DOT_GIT_IGNORE));
+            if (rootIgnore != null) {
+                rootLevels.add(new IgnoreLevel("", rootIgnore));
+            }
+            watches.watch(workTree);
+
+            File[] children = workTree.listFiles();
+            List<Future<Result>> futures = new ArrayList<>();
+            Result rootPart = new Result(null);
+            if (children != null) {
+                for (File child : children) {
+                    String name = child.getName();
+                    if (name.equals(Constants.DOT_GIT)) {
+                        continue;
+                    }
+                    if (child.isDirectory()) {
+                        final List<IgnoreLevel> levels = rootLevels;
+                        futures.add(SCAN_POOL.submit(() -> {
+                            Result part = new Result(null);
+                            scanDirectory(child, name, levels, false, part);
+                            return part;
+                        }));
+                    } else {
+                        scanFile(child, name, rootLevels, false, rootPart);
+                    }
+                }
+            }
+
+            merge(rootPart, result);
+            for (Future<Result> future : futures) {
+                try {
+                    merge(future.get(), result);
+                } catch (Exception e) {
+                    throw new IOException("Working tree scan failed", e);
+                }
+            }
+
+            for (Map.Entry<String, DirCacheEntry> entry : entries.entrySet()) {
+                // Assume-valid entries (paths outside sparse checkout patterns) count as unchanged, as in git
+                if (!seen.contains(entry.getKey()) && !entry.getValue().isAssumeValid()
+                        && (sparse == null || sparse.includes(entry.getKey()))) {
+                    result.missing.add(entry.getKey());
+                }
+            }
+        }
+
+        private void scanDirectory(File dir, String path, List<IgnoreLevel> parentLevels,
+                                   boolean parentIgnored, Result part) throws IOException {
+            DirCacheEntry gitlink = entries.get(path);
+            if (gitlink != null && gitlink.getFileMode() == FileMode.GITLINK) {
+                seen.add(path);
+                return;
+            }
+
+            boolean tracked = trackedDirs.contains(path);
+            boolean ignored = parentIgnored || isIgnored(path, true, parentLevels);
+            if (!tracked) {
+                // Untracked directories are reported as a whole, like git status does
+                if (!ignored) {
+                    // Watched too: the entry disappears once the directory becomes empty
+                    watches.watch(dir);
+                    String[] names = dir.list();
+                    if (names != null && names.length > 0) {
+                        part.untracked.add(path + "/");
+                    }
+                }
+                return;
+            }
+
+            watches.watch(dir);
+            List<IgnoreLevel> levels = parentLevels;
+            IgnoreNode node = loadIgnoreNode(new File(dir, Constants.DOT_GIT_IGNORE));
+            if (node != null) {
+                levels = new ArrayList<>(parentLevels);
+                levels.add(new IgnoreLevel(path + "/", node));
+            }
+
+            File[] children = dir.listFiles();
+            if (children == null) {
+                return;
+            }
+            for (File child : children) {
+                String childPath = path + "/" + child.getName();
+                if (child.isDirectory()) {
+                    scanDirectory(child, childPath, levels, ignored, part);
+                } else {
+                    scanFile(child, childPath, levels, ignored, part);
+                }
+            }
+        }
+
+        private void scanFile(File file, String path, List<IgnoreLevel> levels,
+                              boolean parentIgnored, Result part) throws IOException {
+            DirCacheEntry entry = entries.get(path);
+            if (entry == null) {
+                if (!parentIgnored && !isIgnored(path, false, levels)) {
+                    part.untracked.add(path);
+                }
+                return;
+            }
+            seen.add(path);
+
+            if (entry.isAssumeValid()) {
+                return;
+            }
+            if (entry.getFileMode() == FileMode.SYMLINK || entry.getFileMode() == FileMode.GITLINK) {
+                // java.io follows links, so stat data cannot be compared meaningfully
+                return;
+            }
+
+            long length = file.length();
+            long modified = file.lastModified();
+            long entryModified = entry.getLastModifiedInstant().toEpochMilli();
+            boolean smudged = entry.isSmudged();
+            boolean racy = smudged || entryModified >= indexModified;
+            if (!smudged && length != entry.getLength()) {
+                part.modified.add(path);
+                return;
+            }
+            if (modified == entryModified && !racy) {
+                return;
+            }
+
+            // Stat data changed but size matches: the content decides
+            part.filesRead++;
+            ObjectId id;
+            try (InputStream in = new FileInputStream(file)) {
+                id = new ObjectInserter.Formatter().idFor(Constants.OBJ_BLOB, length, in);
+            }
+            if (!id.equals(entry.getObjectId())) {
+                part.modified.add(path);
+            }
+        }
+
+        private static boolean isIgnored(String path, boolean isDirectory, List<IgnoreLevel> levels) {
+            for (int i = levels.size() - 1; i >= 0; i--) {
+                IgnoreLevel level = levels.get(i);
+                Boolean ignored = level.node.checkIgnored(path.substring(level.base.length()), isDirectory);
+                if (ignored != null) {
+                    return ignored;
+                }
+            }
+            return false;
+        }
+
+        private static void merge(Result part, Result into) {
+            into.modified.addAll(part.modified);
+            into.untracked.addAll(part.untracked);
+            into.filesRead += part.filesRead;
+        }
+    }
+
+    private static IgnoreNode loadIgnoreNode(File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+        try (InputStream in = new FileInputStream(file)) {
+            IgnoreNode node = new IgnoreNode();
+            node.parse(in);
+            return node.getRules().isEmpty() ? null : node;
+        } catch (IOException e) {
+            EventLog.w(TAG, "Could not read ignore file {}: {}", file, e);
+            return null;
+        }
+    }
+
+    /**
+     * Ignore rules of one directory, with the path prefix they are relative to
+     */
+    private static final class IgnoreLevel {
+        final String base;
+        final IgnoreNode node;
+
+        IgnoreLevel(String base, IgnoreNode node) {
+            this.base = base;
+            this.node = node;
+        }
+    }
+
+    /**
+     * Cached result plus the watches that invalidate it
+     *
+     * Created before the scan starts; any event seen while scanning marks the
+     * result stale, and a stale result is never stored.
+     */
+    private static final class CachedStatus {
+        private final String key;
+        private final File workTree;
+        final long indexModified;
+        final long indexLength;
+        final ObjectId head;
+        private final List<FileObserver> observers = new ArrayList<>();
+        private volatile Result result;
+        private volatile boolean stale;
+        private boolean overflow;
+
+        CachedStatus(String key, File workTree, File indexFile, ObjectId head) {
+            this.key = key;
+            this.workTree = workTree;
+            this.indexModified = indexFile.lastModified();
+            this.indexLength = indexFile.length();
+            this.head = head;
+        }
+
+        boolean matches(File indexFile, ObjectId currentHead) {
+            boolean sameHead = head == null ? currentHead == null : head.equals(currentHead);
+            return sameHead && indexFile.lastModified() == indexModified && indexFile.length() == indexLength;
+        }
+
+        /**
+         * Start watching a directory; called by scan threads before the directory is listed
+         */
+        @SuppressWarnings("deprecation")
+        synchronized void watch(File dir) {
+            if (overflow) {
+                return;
+            }
+            if (observers.size() >= MAX_WATCHED_DIRS) {
+                // Larger trees are not cached
+                overflow = true;
+                stopWatching();
+                return;
+            }
+            FileObserver observer = new FileObserver(dir.getAbsolutePath(), WATCH_MASK) {
+                @Override
+                public void onEvent(int event, String path) {
+                    if (dir.equals(workTree) && Constants.DOT_GIT.equals(path)) {
+                        return;
+                    }
+                    stale = true;
+                    if (CACHE.remove(key, CachedStatus.this)) {
+                        CachedStatus.this.stopWatching();
+                    }
+                }
+            };
+            observer.startWatching();
+            observers.add(observer);
+        }
+
+        /**
+         * Cache the scan result unless something changed while it was computed
+         */
+        void store(Result scanned) {
+            boolean cacheable;
+            synchronized (this) {
+                cacheable = !overflow && !stale;
+            }
+            if (!cacheable) {
+                stopWatching();
+                return;
+            }
+            result = scanned;
+            CACHE.put(key, this);
+            // An event may have arrived between the check and the put
+            if (stale && CACHE.remove(key, this)) {
+                stopWatching();
+            }
+        }
+
+        synchronized void stopWatching() {
+            for (FileObserver observer : observers) {
+                observer.stopWatching();
+            }
+            observers.clear();
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.gitutil.mobile;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class FileHistoryTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File workTree;
+    private Git git;
+    private FileHistory history;
+
+    @Before
+    public void setUp() throws Exception {
+        workTree = folder.newFolder("repo");
+        git = Git.init().setDirectory(workTree).call();
+        history = new FileHistory(path -> new FileRepositoryBuilder().setGitDir(new File(path, ".git")).build());
+    }
+
+    @After
+    public void tearDown() {
+        history.forget(workTree.getPath());
+        git.close();
+    }
+
+    @Test
+    public void fileDeletedAtHeadKeepsItsHistory() throws Exception {
+        RevCommit added = write("a.txt", "one", "add a");
+        RevCommit changed = write("a.txt", "two", "change a");
+        write("b.txt", "other", "add b");
+        RevCommit deleted = delete("a.txt", "delete a");
+
+        List<String> lines = page("a.txt");
+
+        assertEquals(Arrays.asList(deleted.getName(), changed.getName(), added.getName()), identifiers(lines));
+        assertEquals(Arrays.asList(deleted.getName()), deletions(lines));
+    }
+
+    @Test
+    public void fileDeletedAndReaddedKeepsHistoryBeforeTheDelete() throws Exception {
+        RevCommit added = write("a.txt", "one", "add a");
+        RevCommit deleted = delete("a.txt", "delete a");
+        write("b.txt", "other", "add b");
+        RevCommit readded = write("a.txt", "again", "add a again");
+        RevCommit changed = write("a.txt", "changed", "change a");
+
+        List<String> lines = page("a.txt");
+
+        assertEquals(Arrays.asList(changed.getName(), readded.getName(), deleted.getName(), added.getName()),
+            identifiers(lines));
+        assertEquals(Arrays.asList(deleted.getName()), deletions(lines));
+    }
+
+    @Test
+    public void untouchedCommitsAreNotListed() throws Exception {
+        RevCommit added = write("a.txt", "one", "add a");
+        write("b.txt", "other", "add b");
+        write("b.txt", "more", "change b");
+
+        assertEquals(Arrays.asList(added.getName()), identifiers(page("a.txt")));
+    }
+
+    @Test
+    public void renamedFileIsFollowedAcrossPages() throws Exception {
+        RevCommit added = write("a.txt", "one\n", "add a");
+        RevCommit changed = write("a.txt", "one\ntwo\n", "change a");
+        new File(workTree, "dir").mkdirs();
+        Files.move(new File(workTree, "a.txt").toPath(), new File(workTree, "dir/b.txt").toPath());
+        git.add().addFilepattern("dir/b.txt").call();
+        git.rm().addFilepattern("a.txt").call();
+        RevCommit renamed = commit("move a to dir/b");
+        RevCommit changedAgain = write("dir/b.txt", "one\ntwo\nthree\n", "change b");
+
+        List<String> first = page("dir/b.txt", "", 2);
+        assertEquals(Arrays.asList(changedAgain.getName(), renamed.getName()), identifiers(first));
+        assertEquals(Arrays.asList("dir/b.txt", "dir/b.txt"), values(first, "FILE_PATH:"));
+        assertEquals(Arrays.asList("a.txt"), values(first, "FILE_RENAMED_FROM:"));
+        assertEquals(Arrays.asList(renamed.getName()), values(first, "FILE_HISTORY_CURSOR:"));
+        assertEquals(Arrays.asList("true"), values(first, "FILE_HISTORY_MORE:"));
+
+        List<String> second = page("dir/b.txt", renamed.getName(), 2);
+        assertEquals(Arrays.asList(changed.getName(), added.getName()), identifiers(second));
+        assertEquals(Arrays.asList("a.txt", "a.txt"), values(second, "FILE_PATH:"));
+        assertEquals(Arrays.asList(added.getName()), values(second, "FILE_HISTORY_CURSOR:"));
+        assertEquals(Arrays.asList("false"), values(second, "FILE_HISTORY_MORE:"));
+    }
+
+    private RevCommit write(String path, String content, String message) throws Exception {
+        Files.write(new File(workTree, path).toPath(), content.getBytes(StandardCharsets.UTF_8));
+        git.add().addFilepattern(path).call();
+        return commit(message);
+    }
+
+    private RevCommit delete(String path, String message) throws Exception {
+        git.rm().addFilepattern(path).call();
+        return commit(message);
+    }
+
+    private RevCommit commit(String message) throws Exception {
+        return git.commit().setMessage(message).setAuthor("Tester", "tester@example.com")
+            .setCommitter("Tester", "tester@example.com").call();
+    }
+
+    private List<String> page(String filePath) throws Exception {
+        return page(filePath, "", FileHistory.MAX_PAGE_SIZE);
+    }
+
+    private List<String> page(String filePath, String cursor, int limit) throws Exception {
+        StringBuilder output = new StringBuilder();
+        history.page(workTree.getPath(), filePath, cursor, limit, output);
+        return Arrays.asList(output.toString().split("\n"));
+    }
+
+    private static List<String> identifiers(List<String> lines) {
+        return values(lines, "IDENTIFIER:");
+    }
+
+    private static List<String> values(List<String> lines, String prefix) {
+        List<String> values = new ArrayList<>();
+        for (String line : lines) {
+            if (line.startsWith(prefix)) {
+                values.add(line.substring(prefix.length()));
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Identifiers of the snapshots marked FILE_DELETED
+     */
+    private static List<String> deletions(List<String> lines) {
+        List<String> deletions = new ArrayList<>();
+        String current = null;
+        for (String line : lines) {
+            if (line.startsWith("IDENTIFIER:")) {
+                current = line.substring("IDENTIFIER:".length());
+            } else if (line.equals("FILE_DELETED:true")) {
+                deletions.add(current);
+            }
+        }
+        return deletions;
+    }
+}
@@ -0,0 +1,168 @@
+package com.gitutil.mobile;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.Repository;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SparseCheckoutTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File workspace;
+    private String remoteUrl;
+    private GitBridge bridge;
+
+    @Before
+    public void setUp() throws Exception {
+        File source = folder.newFolder("source");
+        try (Git git = Git.init().setDirectory(source).call()) {
+            for (String path : Arrays.asList("keep/a.txt", "keep/nested/b.txt", "other/c.txt", "top.txt")) {
+                File file = new File(source, path);
+                file.getParentFile().mkdirs();
+                Files.write(file.toPath(), path.getBytes(StandardCharsets.UTF_8));
+            }
+            git.add().addFilepattern(".").call();
+            git.commit().setMessage("initial").setAuthor("Tester", "tester@example.com")
+                .setCommitter("Tester", "tester@example.com").call();
+        }
+        remoteUrl = source.toURI().toString();
+        workspace = folder.newFolder("workspace");
+        bridge = new GitBridge(workspace.getPath());
+    }
+
+    @After
+    public void tearDown() {
+        WorkingTreeStatus.invalidate(new File(workspace, "clone"));
+    }
+
+    @Test
+    public void sparseCloneWritesOnlyMatchingPaths() throws Exception {
+        File clone = cloneWith("/keep/");
+
+        assertEquals(Arrays.asList("keep/a.txt", "keep/nested/b.txt"), files(clone));
+        try (Git git = Git.open(clone)) {
+            assertEquals(Arrays.asList("other/c.txt", "top.txt"), assumeValid(git.getRepository()));
+        }
+    }
+
+    @Test
+    public void resetRemovesPathsOutsideThePatterns() throws Exception {
+        File clone = cloneWith("/keep/", "/other/");
+        assertEquals(Arrays.asList("keep/a.txt", "keep/nested/b.txt", "other/c.txt"), files(clone));
+
+        try (Git git = Git.open(clone)) {
+            SparseCheckout.configure(git.getRepository(), Collections.singletonList("/keep/"));
+            ParallelCheckout.hardReset(git, Constants.HEAD);
+
+            assertEquals(Arrays.asList("keep/a.txt", "keep/nested/b.txt"), files(clone));
+            assertEquals(Arrays.asList("other/c.txt", "top.txt"), assumeValid(git.getRepository()));
+        }
+    }
+
+    @Test
+    public void statusStaysCleanAfterSparseCheckout() throws Exception {
+        File clone = cloneWith("/keep/");
+
+        List<String> status = lines(call("repo-status", new JSONArray().put(clone.getPath())));
+        assertTrue(status.contains("STATE:clean"));
+        assertTrue(status.contains("MISSING:0"));
+        assertTrue(status.contains("SPARSE_PATTERNS:1"));
+        try (Git git = Git.open(clone)) {
+            assertTrue(git.status().call().isClean());
+        }
+    }
+
+    @Test
+    public void clearingThePatternsChecksEverythingOutAgain() throws Exception {
+        File clone = cloneWith("/keep/");
+
+        try (Git git = Git.open(clone)) {
+            SparseCheckout.configure(git.getRepository(), Collections.<String>emptyList());
+            ParallelCheckout.hardReset(git, Constants.HEAD);
+
+            assertEquals(Arrays.asList("keep/a.txt", "keep/nested/b.txt", "other/c.txt", "top.txt"), files(clone));
+            assertEquals(Collections.<String>emptyList(), assumeValid(git.getRepository()));
+            assertFalse(git.status().call().hasUncommittedChanges());
+        }
+    }
+
+    private File cloneWith(String... patterns) throws Exception {
+        JSONArray sparse = new JSONArray();
+        for (String pattern : patterns) {
+            sparse.put(pattern);
+        }
+        JSONArray args = new JSONArray().put(remoteUrl).put("clone").put("").put(false).put(sparse);
+        assertTrue(lines(call("clone-repository", args)).get(0).startsWith("CLONE_SUCCESS:"));
+        return new File(workspace, "clone");
+    }
+
+    private String call(String wrapper, JSONArray args) throws Exception {
+        JSONObject response = new JSONObject(bridge.executeWrapper(wrapper, args.toString()));
+        assertEquals(response.optString("errors"), true, response.getBoolean("success"));
+        return response.getString("output");
+    }
+
+    private static List<String> lines(String output) {
+        return Arrays.asList(output.split("\n"));
+    }
+
+    /**
+     * Working tree files relative to {@code root}, sorted, without the .git directory
+     */
+    private static List<String> files(File root) {
+        List<String> files = new ArrayList<>();
+        collect(root, "", files);
+        Collections.sort(files);
+        return files;
+    }
+
+    private static void collect(File dir, String prefix, List<String> files) {
+        File[] children = dir.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File child : children) {
+            if (prefix.isEmpty() && child.getName().equals(Constants.DOT_GIT)) {
+                continue;
+            }
+            if (child.isDirectory()) {
+                collect(child, prefix + child.getName() + "/", files);
+            } else {
+                files.add(prefix + child.getName());
+            }
+        }
+    }
+
+    private static List<String> assumeValid(Repository repository) throws Exception {
+        List<String> paths = new ArrayList<>();
+        DirCache index = DirCache.read(repository);
+        for (int i = 0; i < index.getEntryCount(); i++) {
+            DirCacheEntry entry = index.getEntry(i);
+            if (entry.isAssumeValid()) {
+                paths.add(entry.getPathString());
+            }
+        }
+        return paths;
+    }
+}
@@ -0,0 +1,180 @@
+package com.gitutil.mobile;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Wrapper flow measurements for tests/perf/run_perf.sh
+ *
+ * Skipped unless the harness passes -Dgitutil.perf.plan and -Dgitutil.perf.results.
+ * Every plan line is "scenario bare-remote-path runs"; every measured step appends
+ * "scenario step latency_ms peak_heap_kb bytes_written" to the results file.
+ */
+public class WrapperPerfTest {
+    // Rollback target distance from the tip, as in the UI's usual "undo the last few commits"
+    private static final int ROLLBACK_DEPTH = 10;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void runScenarios() throws Exception {
+        String plan = System.getProperty("gitutil.perf.plan");
+        String results = System.getProperty("gitutil.perf.results");
+        Assume.assumeTrue(plan != null && results != null);
+
+        for (String line : Files.readAllLines(new File(plan).toPath(), StandardCharsets.UTF_8)) {
+            String[] fields = line.trim().split("\\s+");
+            if (fields.length < 3) {
+                continue;
+            }
+            for (int run = 0; run < Integer.parseInt(fields[2]); run++) {
+                runScenario(fields[0], new File(fields[1]), new File(results));
+            }
+        }
+    }
+
+    /**
+     * Clone, status, timeline and rollback with push, then put the remote back
+     */
+    private void runScenario(String scenario, File remote, File results) throws Exception {
+        File workspace = folder.newFolder();
+        GitBridge bridge = new GitBridge(workspace.getPath());
+        File clone = new File(workspace, scenario);
+
+        try (Git origin = Git.open(remote)) {
+            ObjectId originalHead = origin.getRepository().resolve(Constants.R_HEADS + "main");
+            try {
+                measure(results, scenario, "clone", bridge, "clone-repository",
+                    new JSONArray().put(remote.toURI().toString()).put(scenario).put("").put(false));
+                configureIdentity(clone);
+                measure(results, scenario, "status", bridge, "repo-status", new JSONArray().put(clone.getPath()));
+                measure(results, scenario, "timeline", bridge, "pull-timeline", new JSONArray().put(clone.getPath()));
+                measure(results, scenario, "rollback", bridge, "apply-rollback",
+                    new JSONArray().put(clone.getPath()).put(rollbackTarget(clone)).put(""));
+            } finally {
+                restore(origin.getRepository(), originalHead);
+                WorkingTreeStatus.invalidate(clone);
+            }
+        }
+    }
+
+    private static void measure(File results, String scenario, String step, GitBridge bridge, String wrapper,
+                                JSONArray args) throws Exception {
+        System.gc();
+        for (MemoryPoolMXBean pool : heapPools()) {
+            pool.resetPeakUsage();
+        }
+        long heapBefore = heapUsed(false);
+        long writtenBefore = bytesWritten();
+        long start = System.nanoTime();
+
+        JSONObject response = new JSONObject(bridge.executeWrapper(wrapper, args.toString()));
+
+        long latencyMs = (System.nanoTime() - start) / 1000000;
+        long peakHeapKb = Math.max(0, heapUsed(true) - heapBefore) / 1024;
+        long written = bytesWritten() - writtenBefore;
+        if (!response.getBoolean("success")) {
+            throw new AssertionError(scenario + "/" + step + " failed: " + response.optString("errors"));
+        }
+        try (PrintWriter out = new PrintWriter(new FileWriter(results, true))) {
+            out.println(scenario + " " + step + " " + latencyMs + " " + peakHeapKb + " " + written);
+        }
+    }
+
+    private static List<MemoryPoolMXBean> heapPools() {
+        List<MemoryPoolMXBean> pools = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+                pools.add(pool);
+            }
+        }
+        return pools;
+    }
+
+    private static long heapUsed(boolean peak) {
+        long used = 0;
+        for (MemoryPoolMXBean pool : heapPools()) {
+            used += peak ? pool.getPeakUsage().getUsed() : pool.getUsage().getUsed();
+        }
+        return used;
+    }
+
+    /**
+     * Bytes this JVM caused to be written to storage, or 0 where /proc is not available
+     */
+    private static long bytesWritten() {
+        try (BufferedReader reader = new BufferedReader(new FileReader("/proc/self/io"))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("write_bytes:")) {
+                    return Long.parseLong(line.substring("write_bytes:".length()).trim());
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            // Not Linux; the metric stays at zero on both sides of the comparison
+        }
+        return 0;
+    }
+
+    private static void configureIdentity(File clone) throws IOException {
+        try (Git git = Git.open(clone)) {
+            StoredConfig config = git.getRepository().getConfig();
+            config.setString("user", null, "name", "Perf Bot");
+            config.setString("user", null, "email", "perf@example.com");
+            config.save();
+        }
+    }
+
+    private static String rollbackTarget(File clone) throws IOException {
+        try (Git git = Git.open(clone); RevWalk walk = new RevWalk(git.getRepository())) {
+            RevCommit commit = walk.parseCommit(git.getRepository().resolve(Constants.HEAD));
+            for (int i = 0; i < ROLLBACK_DEPTH && commit.getParentCount() > 0; i++) {
+                commit = walk.parseCommit(commit.getParent(0));
+            }
+            return commit.getName();
+        }
+    }
+
+    /**
+     * Reset the cached remote's main branch and drop the backup branches the rollback pushed
+     */
+    private static void restore(Repository remote, ObjectId originalHead) throws IOException {
+        RefUpdate main = remote.updateRef(Constants.R_HEADS + "main");
+        main.setNewObjectId(originalHead);
+        main.setForceUpdate(true);
+        main.update();
+        for (Ref ref : remote.getRefDatabase().getRefsByPrefix(Constants.R_HEADS + "backup/")) {
+            RefUpdate backup = remote.updateRef(ref.getName());
+            backup.setForceUpdate(true);
+            backup.delete();
+        }
+    }
+}
@@ -0,0 +1,134 @@
+#!/bin/bash
+# Synthetic repository generator for the performance scenarios
+# Usage: ./generate_repo.sh <output_dir> [--commits N] [--files N] [--file-size BYTES]
+#                           [--branches N] [--pack loose|single|multi] [--packs N]
+#
+# Creates a bare repository at <output_dir> using git fast-import, so even
+# 100k-commit histories are generated in seconds. The first commit adds all
+# files; every following commit rewrites one file (round-robin), so history
+# depth, tree size and blob size can be varied independently.
+
+OUTPUT_DIR="$1"
+COMMITS=1000
+FILES=100
+FILE_SIZE=1024
+BRANCHES=1
+PACK_LAYOUT="single"
+PACK_COUNT=4
+
+if [ -z "$OUTPUT_DIR" ]; then
+    echo "ERROR: Output directory required"
+    echo "Usage: $0 <output_dir> [--commits N] [--files N] [--file-size BYTES] [--branches N] [--pack loose|single|multi] [--packs N]"
+    exit 1
+fi
+shift
+
+while [ $# -gt 0 ]; do
+    case "$1" in
+        --commits) COMMITS="$2"; shift 2 ;;
+        --files) FILES="$2"; shift 2 ;;
+        --file-size) FILE_SIZE="$2"; shift 2 ;;
+        --branches) BRANCHES="$2"; shift 2 ;;
+        --pack) PACK_LAYOUT="$2"; shift 2 ;;
+        --packs) PACK_COUNT="$2"; shift 2 ;;
+        *)
+            echo "ERROR: Unknown option: $1"
+            exit 1
+            ;;
+    esac
+done
+
+case "$PACK_LAYOUT" in
+    loose|single|multi) ;;
+    *)
+        echo "ERROR: Unknown pack layout: $PACK_LAYOUT"
+        exit 1
+        ;;
+esac
+
+if [ -e "$OUTPUT_DIR" ]; then
+    echo "ERROR: Output directory already exists: $OUTPUT_DIR"
+    exit 1
+fi
+
+git init -q --bare "$OUTPUT_DIR" || exit 1
+git -C "$OUTPUT_DIR" symbolic-ref HEAD refs/heads/main
+
+# For the multi layout fast-import starts a new pack at every checkpoint
+CHECKPOINT_EVERY=0
+if [ "$PACK_LAYOUT" = "multi" ] && [ "$PACK_COUNT" -gt 1 ]; then
+    CHECKPOINT_EVERY=$(( (COMMITS + PACK_COUNT - 1) / PACK_COUNT ))
+fi
+
+awk -v commits="$COMMITS" -v files="$FILES" -v size="$FILE_SIZE" \
+    -v branches="$BRANCHES" -v checkpoint="$CHECKPOINT_EVERY" '
+function path(i) {
+    return sprintf("src/dir%03d/file%05d.txt", i % 100, i)
+}
+function content(i, rev,    header, body) {
+    header = sprintf("file %d revision %d\n", i, rev)
+    body = header filler
+    return substr(body, 1, size > length(header) ? size : length(header))
+}
+function emit_file(i, rev,    data) {
+    data = content(i, rev)
+    printf "M 100644 inline %s\ndata %d\n%s\n", path(i), length(data), data
+}
+BEGIN {
+    filler = ""
+    line = "0123456789abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ.,;:!?-_+=\n"
+    while (length(filler) < size) {
+        filler = filler line
+    }
+    when = 1600000000
+    for (c = 1; c <= commits; c++) {
+        message = (c == 1) ? "Initial import" : sprintf("Update %s (change %d)", path((c - 2) % files), c)
+        printf "commit refs/heads/main\nmark :%d\n", c
+        printf "author Perf Bot <perf@example.com> %d +0000\n", when + c * 60
+        printf "committer Perf Bot <perf@example.com> %d +0000\n", when + c * 60
+        printf "data %d\n%s\n", length(message), message
+        if (c == 1) {
+            for (i = 0; i < files; i++) {
+                emit_file(i, 0)
+            }
+        } else {
+            emit_file((c - 2) % files, c)
+        }
+        printf "\n"
+        if (checkpoint > 0 && c % checkpoint == 0 && c < commits) {
+            printf "checkpoint\n\n"
+        }
+    }
+    # Extra branches point at evenly spaced commits of the main history
+    for (b = 1; b < branches; b++) {
+        printf "reset refs/heads/branch-%03d\nfrom :%d\n\n", b, int(commits * b / branches) + 1
+    }
+}' | git -C "$OUTPUT_DIR" -c fastimport.unpackLimit=0 fast-import --quiet >/dev/null
+
+if [ "${PIPESTATUS[1]}" -ne 0 ] || [ -z "$(git -C "$OUTPUT_DIR" rev-parse --verify -q refs/heads/main)" ]; then
+    echo "ERROR: fast-import failed"
+    exit 1
+fi
+
+case "$PACK_LAYOUT" in
+    single)
+        git -C "$OUTPUT_DIR" repack -adq
+        ;;
+    loose)
+        # Explode every pack into loose objects
+        mkdir -p "$OUTPUT_DIR/unpack"
+        mv "$OUTPUT_DIR"/objects/pack/*.pack "$OUTPUT_DIR/unpack/"
+        rm -f "$OUTPUT_DIR"/objects/pack/*.idx
+        for pack in "$OUTPUT_DIR"/unpack/*.pack; do
+            git -C "$OUTPUT_DIR" unpack-objects -q < "$pack"
+        done
+        rm -rf "$OUTPUT_DIR/unpack"
+        ;;
+esac
+
+echo "GENERATED:$OUTPUT_DIR"
+echo "COMMITS:$(git -C "$OUTPUT_DIR" rev-list --count refs/heads/main)"
+echo "BRANCHES:$(git -C "$OUTPUT_DIR" for-each-ref refs/heads | wc -l)"
+echo "PACKS:$(find "$OUTPUT_DIR/objects/pack" -name '*.pack' | wc -l)"
+echo "LOOSE_OBJECTS:$(git -C "$OUTPUT_DIR" count-objects | cut -d' ' -f1)"
+exit 0
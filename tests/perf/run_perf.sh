@@ -0,0 +1,205 @@
+#!/bin/bash
+# Performance scenario harness for the GitUtil wrapper flows
+# Usage: ./run_perf.sh [--update-baseline] [--baseline FILE] [--scenarios FILE] [scenario ...]
+#
+# For every scenario in scenarios.conf a synthetic repository is generated
+# (and cached) and published as a file:// remote. WrapperPerfTest then drives
+# the app's GitBridge wrappers against it in a JVM unit test run: clone-repository,
+# repo-status, pull-timeline and apply-rollback with push. Each step records
+# wall-clock latency, peak JVM heap and bytes written to disk. Results are
+# compared with the baseline and the run fails when a metric exceeds its
+# baseline by more than the configured tolerance. Without a baseline file the
+# first run records one.
+#
+# Environment:
+#   PERF_LATENCY_TOLERANCE  allowed latency increase in percent (default 50)
+#   PERF_MEMORY_TOLERANCE   allowed peak heap increase in percent (default 25)
+#   PERF_IO_TOLERANCE       allowed bytes-written increase in percent (default 25)
+#   PERF_RUNS               repetitions per scenario; the median is compared (default 3)
+#   PERF_CACHE_DIR          where generated repositories are kept between runs
+#   PERF_GRADLE             Gradle command used for the JVM run (default android/gradlew)
+
+SCRIPT_DIR="$(cd "$(dirname "${BASH_SOURCE[0]}")" && pwd)"
+REPO_ROOT="$(cd "$SCRIPT_DIR/../.." && pwd)"
+ANDROID_DIR="$REPO_ROOT/android"
+GRADLE="${PERF_GRADLE:-$ANDROID_DIR/gradlew}"
+
+# Colors for output
+RED='\033[0;31m'
+GREEN='\033[0;32m'
+BLUE='\033[0;34m'
+YELLOW='\033[1;33m'
+NC='\033[0m' # No Color
+
+LATENCY_TOLERANCE="${PERF_LATENCY_TOLERANCE:-50}"
+MEMORY_TOLERANCE="${PERF_MEMORY_TOLERANCE:-25}"
+IO_TOLERANCE="${PERF_IO_TOLERANCE:-25}"
+# Absolute slack so that very fast steps do not fail on scheduler noise
+LATENCY_SLACK_MS=50
+MEMORY_SLACK_KB=8192
+IO_SLACK_BYTES=65536
+RUNS="${PERF_RUNS:-3}"
+
+CACHE_DIR="${PERF_CACHE_DIR:-${TMPDIR:-/tmp}/gitutil-perf-cache}"
+# Baselines depend on the machine, so baseline.txt is local and not committed
+BASELINE_FILE="$SCRIPT_DIR/baseline.txt"
+SCENARIO_FILE="$SCRIPT_DIR/scenarios.conf"
+UPDATE_BASELINE=false
+SELECTED=()
+
+while [ $# -gt 0 ]; do
+    case "$1" in
+        --update-baseline) UPDATE_BASELINE=true; shift ;;
+        --baseline) BASELINE_FILE="$2"; shift 2 ;;
+        --scenarios) SCENARIO_FILE="$2"; shift 2 ;;
+        -*)
+            echo "ERROR: Unknown option: $1"
+            echo "Usage: $0 [--update-baseline] [--baseline FILE] [--scenarios FILE] [scenario ...]"
+            exit 1
+            ;;
+        *) SELECTED+=("$1"); shift ;;
+    esac
+done
+
+if [ ! -f "$SCENARIO_FILE" ]; then
+    echo "ERROR: Scenario file not found: $SCENARIO_FILE"
+    exit 1
+fi
+
+WORK_DIR=$(mktemp -d)
+PLAN_FILE="$WORK_DIR/plan.txt"
+RAW_FILE="$WORK_DIR/raw.txt"
+RESULTS_FILE="$WORK_DIR/results.txt"
+cleanup() {
+    rm -rf "$WORK_DIR"
+}
+trap cleanup EXIT
+
+# Generate the scenario repository unless a cached copy with the same parameters exists
+prepare_remote() {
+    local name="$1" commits="$2" files="$3" size="$4" branches="$5" pack="$6"
+    local remote="$CACHE_DIR/${name}-c${commits}-f${files}-s${size}-b${branches}-${pack}.git"
+    if [ ! -d "$remote" ]; then
+        mkdir -p "$CACHE_DIR"
+        if ! bash "$SCRIPT_DIR/generate_repo.sh" "$remote" --commits "$commits" --files "$files" \
+                --file-size "$size" --branches "$branches" --pack "$pack" > /dev/null; then
+            rm -rf "$remote"
+            return 1
+        fi
+    fi
+    echo "$remote"
+}
+
+# Compare one metric; prints a message and returns 1 on regression
+check_metric() {
+    local label="$1" actual="$2" expected="$3" tolerance="$4" slack="$5"
+    local limit=$(( expected + expected * tolerance / 100 + slack ))
+    if [ "$actual" -gt "$limit" ]; then
+        echo -e "  ${RED}✗${NC} $label: $actual exceeds baseline $expected (limit $limit)"
+        return 1
+    fi
+    return 0
+}
+
+echo -e "${BLUE}========================================${NC}"
+echo -e "${BLUE}GitUtil Performance Scenarios${NC}"
+echo -e "${BLUE}========================================${NC}"
+echo ""
+
+FAILED=0
+while read -r name commits files size branches pack; do
+    case "$name" in ''|\#*) continue ;; esac
+    if [ ${#SELECTED[@]} -gt 0 ] && [[ ! " ${SELECTED[*]} " == *" $name "* ]]; then
+        continue
+    fi
+    echo -e "${YELLOW}Scenario: $name${NC} ($commits commits, $files files of $size bytes, $branches branches, $pack packs)"
+    if remote=$(prepare_remote "$name" "$commits" "$files" "$size" "$branches" "$pack"); then
+        echo "$name $remote $RUNS" >> "$PLAN_FILE"
+    else
+        echo -e "${RED}✗${NC} Could not generate repository for $name"
+        FAILED=$((FAILED + 1))
+    fi
+done < "$SCENARIO_FILE"
+
+# One JVM runs every scenario; WrapperPerfTest appends a line per measured step to RAW_FILE
+if [ -s "$PLAN_FILE" ]; then
+    echo ""
+    echo "Running wrapper flows in the JVM..."
+    if ! (cd "$ANDROID_DIR" && "$GRADLE" -q :app:testDebugUnitTest --tests com.gitutil.mobile.WrapperPerfTest --rerun \
+            -Dgitutil.perf.plan="$PLAN_FILE" -Dgitutil.perf.results="$RAW_FILE"); then
+        echo -e "${RED}✗${NC} Wrapper flow run failed"
+        FAILED=$((FAILED + 1))
+    fi
+fi
+
+# Median of every metric per scenario step, in the order the steps ran
+if [ -s "$RAW_FILE" ]; then
+    awk '{ print $1, $2 }' "$RAW_FILE" | awk '!seen[$0]++' | while read -r scenario step; do
+        line="$scenario $step"
+        for column in 3 4 5; do
+            values=$(grep "^$scenario $step " "$RAW_FILE" | cut -d' ' -f"$column" | sort -n)
+            count=$(echo "$values" | wc -l)
+            line="$line $(echo "$values" | sed -n "$(( (count + 1) / 2 ))p")"
+        done
+        echo "$line"
+    done > "$RESULTS_FILE"
+fi
+
+if [ ! -s "$RESULTS_FILE" ]; then
+    echo -e "${RED}No scenario produced results${NC}"
+    exit 1
+fi
+
+echo ""
+printf "%-10s %-10s %12s %14s %16s\n" "SCENARIO" "STEP" "LATENCY_MS" "PEAK_HEAP_KB" "BYTES_WRITTEN"
+while read -r scenario step latency heap bytes; do
+    printf "%-10s %-10s %12s %14s %16s\n" "$scenario" "$step" "$latency" "$heap" "$bytes"
+done < "$RESULTS_FILE"
+echo ""
+
+if [ ! -f "$BASELINE_FILE" ] && [ "$UPDATE_BASELINE" = false ]; then
+    echo -e "${YELLOW}No baseline yet; recording this run${NC}"
+    UPDATE_BASELINE=true
+fi
+
+if [ "$UPDATE_BASELINE" = true ]; then
+    if [ $FAILED -gt 0 ]; then
+        echo -e "${RED}Not updating the baseline: $FAILED scenario(s) failed${NC}"
+        exit 1
+    fi
+    {
+        echo "# scenario step latency_ms peak_heap_kb bytes_written"
+        # Keep baseline entries of scenarios that were not part of this run
+        if [ -f "$BASELINE_FILE" ]; then
+            grep -v '^#' "$BASELINE_FILE" | while read -r scenario rest; do
+                grep -q "^$scenario " "$RESULTS_FILE" || echo "$scenario $rest"
+            done
+        fi
+        cat "$RESULTS_FILE"
+    } > "$BASELINE_FILE.tmp" && mv "$BASELINE_FILE.tmp" "$BASELINE_FILE"
+    echo -e "${GREEN}Baseline updated: $BASELINE_FILE${NC}"
+    exit 0
+fi
+
+REGRESSIONS=0
+while read -r scenario step latency heap bytes; do
+    baseline=$(grep "^$scenario $step " "$BASELINE_FILE" 2>/dev/null)
+    if [ -z "$baseline" ]; then
+        echo -e "${YELLOW}No baseline for $scenario/$step${NC}"
+        continue
+    fi
+    read -r _ _ base_latency base_heap base_bytes <<< "$baseline"
+    check_metric "$scenario/$step latency_ms" "$latency" "$base_latency" "$LATENCY_TOLERANCE" "$LATENCY_SLACK_MS" || REGRESSIONS=$((REGRESSIONS + 1))
+    check_metric "$scenario/$step peak_heap_kb" "$heap" "$base_heap" "$MEMORY_TOLERANCE" "$MEMORY_SLACK_KB" || REGRESSIONS=$((REGRESSIONS + 1))
+    check_metric "$scenario/$step bytes_written" "$bytes" "$base_bytes" "$IO_TOLERANCE" "$IO_SLACK_BYTES" || REGRESSIONS=$((REGRESSIONS + 1))
+done < "$RESULTS_FILE"
+
+echo -e "${BLUE}========================================${NC}"
+echo "Scenarios failed:    $FAILED"
+echo "Metric regressions:  $REGRESSIONS"
+if [ $FAILED -gt 0 ] || [ $REGRESSIONS -gt 0 ]; then
+    echo -e "${RED}PERFORMANCE CHECK FAILED${NC}"
+    exit 1
+fi
+echo -e "${GREEN}PERFORMANCE CHECK PASSED${NC}"
+exit 0
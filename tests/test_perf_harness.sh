@@ -0,0 +1,100 @@
+#!/bin/bash
+# Tests for the performance scenario harness (tests/perf)
+
+SCRIPT_DIR="$(cd "$(dirname "${BASH_SOURCE[0]}")" && pwd)"
+GENERATOR="$SCRIPT_DIR/perf/generate_repo.sh"
+HARNESS="$SCRIPT_DIR/perf/run_perf.sh"
+
+# Source shared test helpers
+source "$SCRIPT_DIR/test_helpers.sh"
+
+# Setup
+setup() {
+    # Create temporary test directory
+    TEST_DIR=$(mktemp -d)
+    export PERF_CACHE_DIR="$TEST_DIR/cache"
+    export PERF_RUNS=1
+}
+
+# Teardown
+teardown() {
+    # Clean up temporary test directory
+    if [ -n "$TEST_DIR" ] && [ -d "$TEST_DIR" ]; then
+        rm -rf "$TEST_DIR"
+    fi
+}
+
+# Run tests
+echo "Testing perf harness"
+echo "========================"
+echo ""
+
+setup
+
+# Test 1: Generator argument validation
+echo "Test Group: Generator Arguments"
+assert_failure "Fails when no output directory provided" \
+    "bash '$GENERATOR'"
+assert_failure "Fails on unknown pack layout" \
+    "bash '$GENERATOR' '$TEST_DIR/bad.git' --pack weird"
+
+# Test 2: Generated repository shape
+echo ""
+echo "Test Group: Generated Repositories"
+assert_output_contains "Generates the requested commit count" \
+    "bash '$GENERATOR' '$TEST_DIR/single.git' --commits 40 --files 10 --file-size 256 --branches 3 --pack single" \
+    "COMMITS:40"
+assert_output_contains "Creates the requested branches" \
+    "git -C '$TEST_DIR/single.git' for-each-ref refs/heads | wc -l" \
+    "3"
+assert_output_contains "Multi layout writes several packs" \
+    "bash '$GENERATOR' '$TEST_DIR/multi.git' --commits 40 --files 10 --pack multi --packs 4" \
+    "PACKS:4"
+assert_output_contains "Loose layout writes no packs" \
+    "bash '$GENERATOR' '$TEST_DIR/loose.git' --commits 20 --files 5 --pack loose" \
+    "PACKS:0"
+assert_success "Generated repository passes fsck" \
+    "git -C '$TEST_DIR/multi.git' fsck"
+
+# Test 3: Harness run, baseline recording and regression detection
+echo ""
+echo "Test Group: Scenario Runs"
+echo "tiny 30 10 256 2 single" > "$TEST_DIR/scenarios.conf"
+assert_failure "Fails when the JVM wrapper run fails" \
+    "PERF_GRADLE=false bash '$HARNESS' --scenarios '$TEST_DIR/scenarios.conf' --baseline '$TEST_DIR/unused.txt'"
+assert_output_contains "Reports the failed wrapper run" \
+    "PERF_GRADLE=false bash '$HARNESS' --scenarios '$TEST_DIR/scenarios.conf' --baseline '$TEST_DIR/unused.txt'" \
+    "Wrapper flow run failed"
+
+# The wrapper flows run as an Android JVM unit test, which needs the SDK (or a PERF_GRADLE override)
+if [ -n "$PERF_GRADLE" ] || [ -n "$ANDROID_HOME" ] || [ -n "$ANDROID_SDK_ROOT" ] \
+        || [ -f "$SCRIPT_DIR/../android/local.properties" ]; then
+    assert_success "Records a baseline" \
+        "bash '$HARNESS' --scenarios '$TEST_DIR/scenarios.conf' --baseline '$TEST_DIR/baseline.txt' --update-baseline"
+    assert_output_contains "Baseline contains every flow step" \
+        "cut -d' ' -f2 '$TEST_DIR/baseline.txt' | tr '\n' ' '" \
+        "clone status timeline rollback"
+    assert_output_contains "First run without a baseline records one" \
+        "bash '$HARNESS' --scenarios '$TEST_DIR/scenarios.conf' --baseline '$TEST_DIR/first.txt'" \
+        "Baseline updated"
+    assert_success "Recorded baseline file exists" \
+        "[ -s '$TEST_DIR/first.txt' ]"
+    assert_success "Passes against its own baseline" \
+        "PERF_LATENCY_TOLERANCE=1000 bash '$HARNESS' --scenarios '$TEST_DIR/scenarios.conf' --baseline '$TEST_DIR/baseline.txt'"
+    awk '/^#/ { print; next } { print $1, $2, 0, 0, 0 }' "$TEST_DIR/baseline.txt" > "$TEST_DIR/strict.txt"
+    assert_failure "Fails when the baseline is exceeded" \
+        "bash '$HARNESS' --scenarios '$TEST_DIR/scenarios.conf' --baseline '$TEST_DIR/strict.txt'"
+    assert_output_contains "Reports the exceeded metric" \
+        "bash '$HARNESS' --scenarios '$TEST_DIR/scenarios.conf' --baseline '$TEST_DIR/strict.txt'" \
+        "exceeds baseline"
+    assert_success "Cached remote is restored after the rollback step" \
+        "[ \"\$(git -C \"\$(ls -d '$PERF_CACHE_DIR'/tiny-*.git)\" rev-list --count refs/heads/main)\" = 30 ]"
+else
+    echo "Skipping wrapper flow runs: Android SDK not found"
+fi
+
+teardown
+
+# Print summary and exit
+print_test_summary
+exit $?